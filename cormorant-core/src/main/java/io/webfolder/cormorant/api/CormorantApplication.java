@@ -25,20 +25,32 @@ package io.webfolder.cormorant.api;
 import static io.webfolder.cormorant.api.metadata.CacheNames.ACCOUNT;
 import static io.webfolder.cormorant.api.metadata.CacheNames.CONTAINER;
 import static io.webfolder.cormorant.api.metadata.CacheNames.OBJECT;
+import static io.webfolder.cormorant.api.metadata.CacheNames.OBJECTS;
 import static io.webfolder.cormorant.api.metadata.CacheNames.OBJECT_SYS;
+import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableSet;
 import static java.util.concurrent.TimeUnit.DAYS;
 import static net.jodah.expiringmap.ExpirationPolicy.CREATED;
 import static net.jodah.expiringmap.ExpiringMap.builder;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.ws.rs.core.Application;
 
+import io.undertow.server.HandlerWrapper;
+import io.webfolder.cormorant.api.exception.CormorantException;
+import io.webfolder.cormorant.api.fs.ContainerRegistry;
+import io.webfolder.cormorant.api.fs.FileSyncer;
+import io.webfolder.cormorant.api.fs.ObjectIndex;
+import io.webfolder.cormorant.api.fs.PathAccountService;
 import io.webfolder.cormorant.api.fs.PathContainerService;
 import io.webfolder.cormorant.api.fs.PathObjectService;
 import io.webfolder.cormorant.api.metadata.DefaultMetadataServiceFactory;
@@ -54,9 +66,11 @@ import io.webfolder.cormorant.internal.jaxrs.ContainerController;
 import io.webfolder.cormorant.internal.jaxrs.FaviconController;
 import io.webfolder.cormorant.internal.jaxrs.HealthCheckController;
 import io.webfolder.cormorant.internal.jaxrs.ObjectController;
+import io.webfolder.cormorant.internal.jaxrs.TokenAuthorization;
 import io.webfolder.cormorant.internal.undertow.CormorantRemoteUser;
+import io.webfolder.cormorant.internal.undertow.UploadHandler;
 
-public class CormorantApplication extends Application {
+public class CormorantApplication extends Application implements Closeable {
 
     private final AccountService         accountService;
 
@@ -64,33 +78,87 @@ public class CormorantApplication extends Application {
 
     private final CormorantConfiguration configuration;
 
+    private ContainerRegistry            registry;
+
     private Set<Object> singletons;
 
     private Set<Class<?>> classes;
 
+    private HandlerWrapper uploadHandlerWrapper;
+
+    private final List<Closeable> closeables = new ArrayList<>();
+
     public CormorantApplication(
                 final CormorantConfiguration configuration,
                 final AccountService         accountService,
                 final KeystoneService        keystoneService) {
+        this(configuration, accountService, keystoneService, null);
+    }
+
+    /**
+     * @param registry container registry shared with the account service, closed by the caller,
+     *                 if <code>null</code> the registry of a {@link PathAccountService} is used
+     *                 or one is created and closed with the application
+     */
+    public CormorantApplication(
+                final CormorantConfiguration configuration,
+                final AccountService         accountService,
+                final KeystoneService        keystoneService,
+                final ContainerRegistry      registry) {
         this.configuration   = configuration;
         this.accountService  = accountService;
         this.keystoneService = keystoneService;
+        this.registry        = registry;
         init();
     }
 
     protected void init() {
         singletons = new HashSet<>();
 
-        final MetadataServiceFactory metadataServiceFactory = new DefaultMetadataServiceFactory(configuration.getMetadataStore(), configuration.getStorage());
+        final FileSyncer             syncer                 = new FileSyncer(configuration.getDurability());
+
+        final MetadataServiceFactory metadataServiceFactory = new DefaultMetadataServiceFactory(configuration, syncer);
 
         final MetadataService accountMetadataService   = metadataServiceFactory.create(ACCOUNT);
         final MetadataService containerMetadataService = metadataServiceFactory.create(CONTAINER);
         final MetadataService objectMetadataService    = metadataServiceFactory.create(OBJECT);
         final MetadataService systemMetadataService    = metadataServiceFactory.create(OBJECT_SYS);
 
+        for (MetadataService next : asList(accountMetadataService, containerMetadataService,
+                                                objectMetadataService, systemMetadataService)) {
+            if (next instanceof Closeable) {
+                closeables.add((Closeable) next);
+            }
+        }
+
+        // the metadata writer and the connection pool outlive the metadata services
+        if (metadataServiceFactory instanceof Closeable) {
+            closeables.add((Closeable) metadataServiceFactory);
+        }
+
+        final ObjectIndex            objectIndex       = new ObjectIndex(configuration.getObjectStore(),
+                                                                configuration.getMetadataStore().resolve(OBJECTS), syncer);
+
+        try {
+            objectIndex.load();
+        } catch (IOException e) {
+            throw new CormorantException("Unable to load object indexes.", e);
+        }
+
+        closeables.add(objectIndex);
+        closeables.add(syncer);
+
+        if (registry == null && accountService instanceof PathAccountService) {
+            registry = ((PathAccountService) accountService).getRegistry();
+        }
+        if (registry == null) {
+            registry = new ContainerRegistry(configuration.getObjectStore());
+            closeables.add(registry);
+        }
+
         final ContainerService<Path> containerService  = new PathContainerService(configuration.getObjectStore(),
-                                                                configuration.getPathMaxCount(), containerMetadataService, systemMetadataService);
-        final ObjectService<Path>    objectService     = new PathObjectService(containerService, systemMetadataService);
+                                                                configuration.getPathMaxCount(), containerMetadataService, systemMetadataService, objectIndex, registry);
+        final ObjectService<Path>    objectService     = new PathObjectService(containerService, systemMetadataService, objectIndex, syncer);
 
         containerService.setObjectService(objectService);
 
@@ -102,6 +170,11 @@ public class CormorantApplication extends Application {
 
         CormorantRemoteUser.principals = tokens;
 
+        final TokenAuthorization authorization = new TokenAuthorization(tokens, keystoneService, configuration.getAccountName());
+
+        uploadHandlerWrapper = next -> new UploadHandler<>(next, authorization, accountService, containerService, objectService,
+                                                                configuration.isZeroCopyUpload());
+
         singletons.add(new HealthCheckController());
 
         singletons.add(new CormorantFeature<>(tokens, keystoneService, accountMetadataService, containerService));
@@ -137,4 +210,30 @@ public class CormorantApplication extends Application {
     public Set<Class<?>> getClasses() {
         return classes;
     }
+
+    /**
+     * @return wrapper which receives object uploads on the IO thread before they are dispatched to the controller
+     */
+    public HandlerWrapper getUploadHandlerWrapper() {
+        return uploadHandlerWrapper;
+    }
+
+    /**
+     * Closes the metadata services and their factory, the object indexes, the file syncer and an owned container registry, must be called after the server is stopped.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (Closeable next : closeables) {
+            try {
+                next.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        closeables.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
 }
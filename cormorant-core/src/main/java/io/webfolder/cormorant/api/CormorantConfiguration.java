@@ -24,7 +24,9 @@ package io.webfolder.cormorant.api;
 
 import java.nio.file.Path;
 
+import io.webfolder.cormorant.api.fs.Durability;
 import io.webfolder.cormorant.api.metadata.MetadataStorage;
+import static io.webfolder.cormorant.api.fs.Durability.None;
 import static io.webfolder.cormorant.api.metadata.MetadataStorage.SQLite;
 
 public class CormorantConfiguration {
@@ -39,13 +41,27 @@ public class CormorantConfiguration {
 
     private int pathMaxCount;
 
+    private int connectionPoolSize;
+
+    private int statementCacheSize;
+
+    private int metadataCacheSize;
+
+    private Durability durability;
+
+    private boolean zeroCopyUpload;
+
     public static class Builder {
 
         private CormorantConfiguration configuration = new CormorantConfiguration();
 
         public Builder() {
             storage(SQLite).
-            pathMaxCount(10_000);
+            pathMaxCount(10_000).
+            connectionPoolSize(8).
+            statementCacheSize(32).
+            metadataCacheSize(10_000).
+            durability(None);
         }
 
         public Builder objectStore(Path objectStore) {
@@ -73,6 +89,46 @@ public class CormorantConfiguration {
             return this;
         }
 
+        /**
+         * @param connectionPoolSize maximum number of pooled JDBC connections, <code>0</code> disables pooling
+         */
+        public Builder connectionPoolSize(int connectionPoolSize) {
+            configuration.connectionPoolSize = connectionPoolSize;
+            return this;
+        }
+
+        /**
+         * @param statementCacheSize number of prepared statements cached per pooled connection
+         */
+        public Builder statementCacheSize(int statementCacheSize) {
+            configuration.statementCacheSize = statementCacheSize;
+            return this;
+        }
+
+        /**
+         * @param metadataCacheSize maximum number of namespaces kept in the metadata cache, <code>0</code> disables the cache
+         */
+        public Builder metadataCacheSize(int metadataCacheSize) {
+            configuration.metadataCacheSize = metadataCacheSize;
+            return this;
+        }
+
+        /**
+         * @param durability when written objects and metadata are forced to disk
+         */
+        public Builder durability(Durability durability) {
+            configuration.durability = durability;
+            return this;
+        }
+
+        /**
+         * @param zeroCopyUpload transfer request bodies from the socket to the file without copying them to the heap
+         */
+        public Builder zeroCopyUpload(boolean zeroCopyUpload) {
+            configuration.zeroCopyUpload = zeroCopyUpload;
+            return this;
+        }
+
         public CormorantConfiguration build() {
             return configuration;
         }
@@ -97,4 +153,24 @@ public class CormorantConfiguration {
     public MetadataStorage getStorage() {
         return storage;
     }
+
+    public int getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public int getMetadataCacheSize() {
+        return metadataCacheSize;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public boolean isZeroCopyUpload() {
+        return zeroCopyUpload;
+    }
 }
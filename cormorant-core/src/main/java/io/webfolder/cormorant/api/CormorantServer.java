@@ -155,6 +155,9 @@ public class CormorantServer {
                         .setServletStackTraces(NONE)
                         .setSecurityDisabled(true)
                         .setClassLoader(deployment.getApplication().getClass().getClassLoader());
+        if ( application instanceof CormorantApplication ) {
+            di = di.addInitialHandlerChainWrapper(((CormorantApplication) application).getUploadHandlerWrapper());
+        }
         if ( accessLogPath != null ) {
             File outputDirectory = accessLogPath.getParent().toFile();
             String logBaseName = accessLogPath.getFileName().toString();
@@ -0,0 +1,349 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api;
+
+import static java.lang.reflect.Proxy.newProxyInstance;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Fixed size connection pool with a prepared statement cache per connection.
+ */
+class PooledDataSource implements DataSource, Closeable {
+
+    private static final long ACQUIRE_TIMEOUT = 30;
+
+    private final DataSource ds;
+
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+    private volatile boolean closed;
+
+    public PooledDataSource(
+                    final DataSource ds,
+                    final int        poolSize,
+                    final int        statementCacheSize) {
+        this.ds                 = ds;
+        this.statementCacheSize = statementCacheSize;
+        this.permits            = new Semaphore(poolSize, true);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        try {
+            if ( ! permits.tryAcquire(ACQUIRE_TIMEOUT, SECONDS) ) {
+                throw new SQLException("Timed out waiting for a pooled connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        }
+        try {
+            PooledConnection connection = idle.pollFirst();
+            if (connection == null) {
+                connection = new PooledConnection(ds.getConnection());
+            }
+            return connection.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections do not support per call credentials.");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return ds.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        ds.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        ds.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return ds.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return ds.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : ds.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || ds.isWrapperFor(iface);
+    }
+
+    /**
+     * Closes the idle connections, connections which are in use are closed when they are released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection next;
+        while ((next = idle.pollFirst()) != null) {
+            next.destroy();
+        }
+    }
+
+    protected void release(final PooledConnection connection, final boolean reusable) {
+        if (reusable && ! closed) {
+            idle.offerFirst(connection);
+            // closed meanwhile, close() may have missed the connection
+            if (closed && idle.remove(connection)) {
+                connection.destroy();
+            }
+        } else {
+            connection.destroy();
+        }
+        permits.release();
+    }
+
+    private static Object invoke(final Object target, final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private class PooledConnection {
+
+        private final Connection connection;
+
+        private final Map<String, CachedStatement> statements;
+
+        public PooledConnection(final Connection connection) {
+            this.connection = connection;
+            this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Entry<String, CachedStatement> eldest) {
+                    // statements which are still open are not evicted
+                    if ( size() > statementCacheSize && ! eldest.getValue().inUse ) {
+                        eldest.getValue().destroy();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        public Connection lease() {
+            return (Connection) newProxyInstance(getClass().getClassLoader(),
+                                        new Class<?>[] { Connection.class }, new ConnectionHandler(this));
+        }
+
+        public PreparedStatement prepareStatement(final Connection owner, final String sql) throws SQLException {
+            if (statementCacheSize <= 0) {
+                return connection.prepareStatement(sql);
+            }
+            CachedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = new CachedStatement(connection.prepareStatement(sql));
+                statements.put(sql, statement);
+            } else if (statement.inUse) {
+                // same statement is already open on this connection
+                return connection.prepareStatement(sql);
+            }
+            return statement.lease(owner);
+        }
+
+        public boolean reset() {
+            try {
+                if (connection.isClosed()) {
+                    return false;
+                }
+                if ( ! connection.getAutoCommit() ) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                for (CachedStatement next : statements.values()) {
+                    if (next.inUse) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        public void destroy() {
+            for (Iterator<CachedStatement> iterator = statements.values().iterator(); iterator.hasNext();) {
+                iterator.next().destroy();
+                iterator.remove();
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // ignore
+            }
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+
+        private final PooledConnection pooledConnection;
+
+        private boolean closed;
+
+        public ConnectionHandler(final PooledConnection pooledConnection) {
+            this.pooledConnection = pooledConnection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final String name = method.getName();
+            if ("close".equals(name)) {
+                if ( ! closed ) {
+                    closed = true;
+                    release(pooledConnection, pooledConnection.reset());
+                }
+                return null;
+            } else if ("isClosed".equals(name)) {
+                return closed || pooledConnection.connection.isClosed();
+            } else if (closed) {
+                throw new SQLException("Connection is closed.");
+            } else if ( "prepareStatement".equals(name) &&
+                            args != null && args.length == 1 ) {
+                return pooledConnection.prepareStatement((Connection) proxy, (String) args[0]);
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            return PooledDataSource.invoke(pooledConnection.connection, method, args);
+        }
+    }
+
+    private static class CachedStatement {
+
+        private final PreparedStatement statement;
+
+        private boolean inUse;
+
+        public CachedStatement(final PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        public PreparedStatement lease(final Connection owner) {
+            inUse = true;
+            return (PreparedStatement) newProxyInstance(getClass().getClassLoader(),
+                                        new Class<?>[] { PreparedStatement.class }, new StatementHandler(this, owner));
+        }
+
+        public void destroy() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+
+        private final CachedStatement cachedStatement;
+
+        private final Connection      connection;
+
+        private boolean closed;
+
+        /**
+         * @param connection the leased connection, callers never see the pooled connection itself
+         */
+        public StatementHandler(final CachedStatement cachedStatement, final Connection connection) {
+            this.cachedStatement = cachedStatement;
+            this.connection      = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final String name = method.getName();
+            if ("close".equals(name)) {
+                if ( ! closed ) {
+                    closed = true;
+                    cachedStatement.inUse = false;
+                    cachedStatement.statement.clearParameters();
+                }
+                return null;
+            } else if ("isClosed".equals(name)) {
+                return closed || cachedStatement.statement.isClosed();
+            } else if (closed) {
+                throw new SQLException("Statement is closed.");
+            } else if ("getConnection".equals(name)) {
+                return connection;
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            return PooledDataSource.invoke(cachedStatement.statement, method, args);
+        }
+    }
+}
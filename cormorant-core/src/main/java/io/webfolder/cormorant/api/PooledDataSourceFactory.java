@@ -0,0 +1,54 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api;
+
+import java.io.Closeable;
+
+import javax.sql.DataSource;
+
+import io.webfolder.cormorant.api.exception.CormorantException;
+
+public class PooledDataSourceFactory implements DataSourceFactory, Closeable {
+
+    private final PooledDataSource ds;
+
+    public PooledDataSourceFactory(
+                    final DataSourceFactory dsFactory,
+                    final int               poolSize,
+                    final int               statementCacheSize) {
+        if (poolSize <= 0) {
+            throw new CormorantException("Invalid connection pool size [" + poolSize + "].");
+        }
+        ds = new PooledDataSource(dsFactory.get(), poolSize, statementCacheSize);
+    }
+
+    @Override
+    public DataSource get() {
+        return ds;
+    }
+
+    @Override
+    public void close() {
+        ds.close();
+    }
+}
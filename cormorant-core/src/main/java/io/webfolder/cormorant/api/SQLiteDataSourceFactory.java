@@ -25,6 +25,9 @@ package io.webfolder.cormorant.api;
 import static java.io.File.separator;
 import static java.lang.String.format;
 import static org.sqlite.SQLiteConfig.Encoding.UTF8;
+import static org.sqlite.SQLiteConfig.JournalMode.WAL;
+import static org.sqlite.SQLiteConfig.SynchronousMode.NORMAL;
+import static org.sqlite.SQLiteConfig.TempStore.MEMORY;
 
 import java.nio.file.Path;
 
@@ -37,10 +40,30 @@ public class SQLiteDataSourceFactory implements DataSourceFactory {
 
     private final SQLiteDataSource ds;
 
+    private static final int BUSY_TIMEOUT = 10_000;
+
+    private static final int CACHE_SIZE   = -16 * 1024; // negative value is the cache size in KiB
+
     public SQLiteDataSourceFactory(final Path metadataStore) {
+        this(metadataStore, false);
+    }
+
+    /**
+     * @param writeAheadLog use WAL journaling so that readers are not blocked by the writer,
+     *                      shared cache is turned off in this mode because it serializes readers and writers on table locks
+     */
+    public SQLiteDataSourceFactory(final Path metadataStore, final boolean writeAheadLog) {
         SQLiteConfig config = new SQLiteConfig();
         config.setEncoding(UTF8);
-        config.setSharedCache(true);
+        if (writeAheadLog) {
+            config.setJournalMode(WAL);
+            config.setSynchronous(NORMAL);
+            config.setBusyTimeout(BUSY_TIMEOUT);
+            config.setCacheSize(CACHE_SIZE);
+            config.setTempStore(MEMORY);
+        } else {
+            config.setSharedCache(true);
+        }
         ds = new SQLiteDataSource(config);
         ds.setUrl(format("jdbc:sqlite:%s%scormorant.db", metadataStore.toAbsolutePath(), separator));
     }
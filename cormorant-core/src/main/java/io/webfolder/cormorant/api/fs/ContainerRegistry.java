@@ -0,0 +1,198 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.fs;
+
+import static io.webfolder.cormorant.api.fs.StagingArea.isStagingDirectory;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.list;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static java.util.stream.Collectors.toSet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.webfolder.cormorant.api.exception.CormorantException;
+
+/**
+ * In-memory set of the container names under the object store root.
+ * 
+ * The registry is updated by container create and delete, containers created or removed
+ * outside of cormorant are picked up by a {@link WatchService} on the root directory.
+ * A single registry is shared by the account and container services of an application,
+ * its owner closes it on shutdown.
+ */
+public class ContainerRegistry implements Closeable {
+
+    private static final long REWATCH_INTERVAL = 1_000; // milliseconds
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContainerRegistry.class);
+
+    private final Path root;
+
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
+
+    private final WatchService watchService;
+
+    public ContainerRegistry(final Path root) {
+        this(root, true);
+    }
+
+    /**
+     * @param watch <code>false</code> if only the changes made through the registry are seen, no thread is started
+     */
+    public ContainerRegistry(final Path root, final boolean watch) {
+        this.root         = root.toAbsolutePath().normalize();
+        reload();
+        this.watchService = watch ? watch() : null;
+    }
+
+    public boolean contains(final String containerName) {
+        return names.contains(containerName);
+    }
+
+    /**
+     * @return snapshot of the container names
+     */
+    public List<String> getNames() {
+        return new ArrayList<>(names);
+    }
+
+    public void add(final String containerName) {
+        names.add(containerName);
+    }
+
+    public void remove(final String containerName) {
+        names.remove(containerName);
+    }
+
+    protected void reload() {
+        try (Stream<Path> stream = list(root)) {
+            final Set<String> current = stream
+                                        .filter(p -> isDirectory(p, NOFOLLOW_LINKS) && ! isStagingDirectory(p))
+                                        .map(p -> p.getFileName().toString())
+                                        .collect(toSet());
+            names.retainAll(current);
+            names.addAll(current);
+        } catch (IOException e) {
+            throw new CormorantException("Unable to list containers [" + root + "].", e);
+        }
+    }
+
+    protected WatchService watch() {
+        final WatchService watchService;
+        try {
+            watchService = root.getFileSystem().newWatchService();
+            root.register(watchService, ENTRY_CREATE, ENTRY_DELETE, OVERFLOW);
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.warn("Unable to watch [" + root + "], containers changed outside of cormorant are not detected.", e);
+            return null;
+        }
+        final Thread thread = new Thread(() -> poll(watchService), "cormorant-container-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        return watchService;
+    }
+
+    protected void poll(final WatchService watchService) {
+        while (true) {
+            final WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (OVERFLOW.equals(event.kind())) {
+                    try {
+                        reload();
+                    } catch (CormorantException e) {
+                        LOG.error(e.getMessage(), e);
+                    }
+                    continue;
+                }
+                final Path   path = root.resolve((Path) event.context());
+                final String name = path.getFileName().toString();
+                // the event may be late, the current state of the path wins
+                if (isDirectory(path, NOFOLLOW_LINKS) && ! isStagingDirectory(path)) {
+                    names.add(name);
+                } else {
+                    names.remove(name);
+                }
+            }
+            // the root was removed or replaced, the key of the old directory is never signalled again
+            if ( ! key.reset() && ! rewatch(watchService) ) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Registers the root again once it exists and reloads the names.
+     *
+     * @return <code>false</code> if the registry is closed meanwhile
+     */
+    protected boolean rewatch(final WatchService watchService) {
+        while (true) {
+            try {
+                root.register(watchService, ENTRY_CREATE, ENTRY_DELETE, OVERFLOW);
+                reload();
+                return true;
+            } catch (ClosedWatchServiceException e) {
+                return false;
+            } catch (IOException | CormorantException e) {
+                names.clear();
+            }
+            try {
+                Thread.sleep(REWATCH_INTERVAL);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Stops watching the root directory.
+     */
+    @Override
+    public void close() throws IOException {
+        if ( watchService != null ) {
+            watchService.close();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.fs;
+
+import static io.webfolder.cormorant.api.fs.Durability.Sync;
+import static java.nio.channels.Channels.newOutputStream;
+import static java.nio.channels.FileChannel.open;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Persists the object count and bytes used of each container as a small file under the stats store.
+ * 
+ * A file is written as clean only on orderly shutdown, counters read back from
+ * a dirty file may have missed the updates after the last flush.
+ * Each file is forced before it replaces the previous one, and the rename is forced with its directory.
+ */
+class ContainerStatsStore {
+
+    private static final String STATS_EXTENSION = ".stats";
+
+    private static final String TEMP_EXTENSION  = ".tmp";
+
+    private final Path store;
+
+    private final FileSyncer syncer = new FileSyncer(Sync);
+
+    static class Stats {
+
+        final String  key;
+
+        final long    objectCount;
+
+        final long    bytesUsed;
+
+        final boolean clean;
+
+        Stats(final String key, final long objectCount, final long bytesUsed, final boolean clean) {
+            this.key         = key;
+            this.objectCount = objectCount;
+            this.bytesUsed   = bytesUsed;
+            this.clean       = clean;
+        }
+    }
+
+    ContainerStatsStore(final Path store) {
+        this.store = store.toAbsolutePath().normalize();
+    }
+
+    Stats read(final String container) throws IOException {
+        final Path file = store.resolve(container + STATS_EXTENSION);
+        if ( ! exists(file) ) {
+            return null;
+        }
+        try (DataInputStream is = new DataInputStream(newInputStream(file))) {
+            return new Stats(is.readUTF(), is.readLong(), is.readLong(), is.readBoolean());
+        } catch (IOException e) {
+            // a truncated file is handled like a missing one
+            return null;
+        }
+    }
+
+    synchronized void write(final String container, final Stats stats) throws IOException {
+        createDirectories(store);
+        final Path file = store.resolve(container + STATS_EXTENSION);
+        final Path temp = store.resolve(container + STATS_EXTENSION + TEMP_EXTENSION);
+        try (FileChannel channel = open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            final DataOutputStream os = new DataOutputStream(newOutputStream(channel));
+            os.writeUTF(stats.key);
+            os.writeLong(stats.objectCount);
+            os.writeLong(stats.bytesUsed);
+            os.writeBoolean(stats.clean);
+            os.flush();
+            channel.force(false);
+        }
+        move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        syncer.sync(file);
+    }
+
+    synchronized void delete(final String container) throws IOException {
+        deleteIfExists(store.resolve(container + STATS_EXTENSION));
+    }
+}
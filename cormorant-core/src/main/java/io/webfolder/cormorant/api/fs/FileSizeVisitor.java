@@ -22,8 +22,10 @@
  */
 package io.webfolder.cormorant.api.fs;
 
+import static io.webfolder.cormorant.api.fs.StagingArea.isStagingDirectory;
 import static java.lang.Long.MAX_VALUE;
 import static java.nio.file.FileVisitResult.CONTINUE;
+import static java.nio.file.FileVisitResult.SKIP_SUBTREE;
 import static java.nio.file.FileVisitResult.TERMINATE;
 
 import java.io.IOException;
@@ -71,6 +73,9 @@ public class FileSizeVisitor extends SimpleFileVisitor<Path> {
 
     @Override
     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        if (isStagingDirectory(dir)) {
+            return SKIP_SUBTREE;
+        }
         if (countDirectory) {
             objectCount += 1;
         }
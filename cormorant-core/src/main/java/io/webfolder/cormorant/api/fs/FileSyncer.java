@@ -0,0 +1,282 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.fs;
+
+import static io.webfolder.cormorant.api.fs.Durability.GroupCommit;
+import static io.webfolder.cormorant.api.fs.Durability.None;
+import static java.nio.channels.FileChannel.open;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Collections.singletonList;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.webfolder.cormorant.api.exception.CormorantException;
+
+/**
+ * Forces written files and their directory entries to disk according to the {@link Durability} mode.
+ * 
+ * In {@link Durability#GroupCommit} mode callers queue their files and wait,
+ * a single thread takes every queued file at once, syncs each file and then each parent
+ * directory of the batch once, and releases the callers of the batch together.
+ * Requests queued before {@link #close()} are synced, later requests are rejected.
+ */
+public class FileSyncer implements Closeable {
+
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    private static final Request CLOSE = new Request(null);
+
+    private final Durability durability;
+
+    private final BlockingQueue<Request> queue;
+
+    private final Thread thread;
+
+    private final Logger log = LoggerFactory.getLogger(FileSyncer.class);
+
+    private final Object lock = new Object();
+
+    private volatile boolean closed;
+
+    private static class Request {
+
+        private final Path file;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        public Request(final Path file) {
+            this.file = file;
+        }
+    }
+
+    public FileSyncer(final Durability durability) {
+        this.durability = durability == null ? None : durability;
+        if (GroupCommit.equals(this.durability)) {
+            this.queue  = new LinkedBlockingQueue<>();
+            this.thread = new Thread(this::run, "cormorant-file-syncer");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        } else {
+            this.queue  = null;
+            this.thread = null;
+        }
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Returns once the content of the file and its directory entry are on disk.
+     */
+    public void sync(final Path file) throws IOException {
+        sync(singletonList(file));
+    }
+
+    /**
+     * Creates the directory and its missing parents like {@link Files#createDirectories},
+     * each created directory is synced in its parent before this method returns.
+     */
+    public Path createDirectories(final Path directory) throws IOException {
+        final Deque<Path> created = new ArrayDeque<>();
+        for (Path next = directory.toAbsolutePath(); next != null && ! exists(next); next = next.getParent()) {
+            created.push(next);
+        }
+        final Path result = Files.createDirectories(directory);
+        if ( ! created.isEmpty() ) {
+            sync(new ArrayList<>(created));
+        }
+        return result;
+    }
+
+    protected void sync(final List<Path> files) throws IOException {
+        switch (durability) {
+            case None:
+                break;
+            case Sync:
+                for (Path next : files) {
+                    force(next);
+                    forceDirectory(next.toAbsolutePath().getParent());
+                }
+                break;
+            case GroupCommit:
+                final List<Request> requests = new ArrayList<>(files.size());
+                synchronized (lock) {
+                    // nothing is queued after the close request, the thread syncs every request before it
+                    if (closed) {
+                        throw new CormorantException("File syncer is closed.");
+                    }
+                    for (Path next : files) {
+                        final Request request = new Request(next);
+                        requests.add(request);
+                        queue.add(request);
+                    }
+                }
+                for (Request next : requests) {
+                    await(next.future);
+                }
+                break;
+        }
+    }
+
+    protected void await(final CompletableFuture<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CormorantException("Interrupted while waiting for sync.", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new CormorantException(cause);
+        }
+    }
+
+    protected void run() {
+        final List<Request> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            running = ! batch.remove(CLOSE);
+            // the same file, e.g. a journal, is often queued by many callers of the batch
+            final Set<Path>            files       = new LinkedHashSet<>();
+            final Set<Path>            directories = new LinkedHashSet<>();
+            final Map<Path, Exception> errors      = new HashMap<>();
+            for (Request next : batch) {
+                files.add(next.file.toAbsolutePath());
+            }
+            for (Path next : files) {
+                try {
+                    force(next);
+                    directories.add(next.getParent());
+                } catch (IOException | RuntimeException e) {
+                    errors.put(next, e);
+                }
+            }
+            IOException directoryError = null;
+            for (Path next : directories) {
+                try {
+                    forceDirectory(next);
+                } catch (IOException e) {
+                    directoryError = e;
+                }
+            }
+            for (Request next : batch) {
+                final Exception error = errors.get(next.file.toAbsolutePath());
+                if (error != null) {
+                    next.future.completeExceptionally(error);
+                } else if (directoryError != null) {
+                    next.future.completeExceptionally(directoryError);
+                } else {
+                    next.future.complete(null);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    protected void force(final Path file) throws IOException {
+        if (isDirectory(file)) {
+            forceDirectory(file);
+            return;
+        }
+        try (FileChannel channel = open(file, READ)) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Syncs the directory entries, file systems which cannot open a directory are skipped.
+     */
+    protected void forceDirectory(final Path directory) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        final FileChannel channel;
+        try {
+            channel = open(directory, READ);
+        } catch (IOException e) {
+            log.debug("Unable to open directory [{}] for sync.", directory);
+            return;
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (queue != null) {
+                queue.add(CLOSE);
+            }
+        }
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // left behind only if the thread stopped early, their callers would wait forever
+        Request next;
+        while ((next = queue.poll()) != null) {
+            next.future.completeExceptionally(new CormorantException("File syncer is closed."));
+        }
+    }
+}
@@ -0,0 +1,399 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.fs;
+
+import static io.webfolder.cormorant.api.fs.Durability.Sync;
+import static io.webfolder.cormorant.api.fs.StagingArea.isStagingDirectory;
+import static java.lang.System.currentTimeMillis;
+import static java.nio.channels.Channels.newOutputStream;
+import static java.nio.channels.FileChannel.open;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createFile;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newDirectoryStream;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.walkFileTree;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Collections.unmodifiableNavigableMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.webfolder.cormorant.api.exception.CormorantException;
+
+/**
+ * Sorted index of object and directory names, one per container.
+ * 
+ * Each index is kept in memory and persisted as an append-only journal
+ * under the index store. {@link #load()} reads every index at startup,
+ * journals are trusted only if the previous run was closed cleanly,
+ * otherwise each index is rebuilt from its container directory.
+ */
+public class ObjectIndex implements Closeable {
+
+    private static final String INDEX_EXTENSION    = ".index";
+
+    private static final String TEMP_EXTENSION     = ".tmp";
+
+    private static final String CLEAN_MARKER       = "index.clean";
+
+    private static final char   CHAR_BACKSLASH     = '\\';
+
+    private static final char   CHAR_FORWARD_SLASH = '/';
+
+    private static final byte   ADD                = '+';
+
+    private static final byte   REMOVE             = '-';
+
+    private static final int    BUFFER_SIZE        = 64 * 1024;
+
+    private static final int    COMPACT_THRESHOLD  = 10_000;
+
+    private final Path root;
+
+    private final Path indexStore;
+
+    private final FileSyncer syncer;
+
+    private final FileSyncer durable = new FileSyncer(Sync);
+
+    private final ConcurrentMap<Path, ContainerIndex> indexes = new ConcurrentHashMap<>();
+
+    private final Logger log = LoggerFactory.getLogger(ObjectIndex.class);
+
+    private volatile boolean loaded;
+
+    public ObjectIndex(final Path root, final Path indexStore) {
+        this(root, indexStore, new FileSyncer(null));
+    }
+
+    public ObjectIndex(final Path root, final Path indexStore, final FileSyncer syncer) {
+        this.root       = root.toAbsolutePath().normalize();
+        this.indexStore = indexStore.toAbsolutePath().normalize();
+        this.syncer     = syncer;
+    }
+
+    /**
+     * Loads the index of every container, journals left by an unclean shutdown are discarded and rebuilt.
+     */
+    public void load() throws IOException {
+        createDirectories(indexStore);
+        final Path    marker = indexStore.resolve(CLEAN_MARKER);
+        final boolean clean  = exists(marker);
+        if (clean) {
+            deleteIfExists(marker);
+            durable.sync(indexStore);
+        } else {
+            try (DirectoryStream<Path> stream = newDirectoryStream(indexStore)) {
+                for (Path next : stream) {
+                    final String name = next.getFileName().toString();
+                    if ( name.endsWith(INDEX_EXTENSION) || name.endsWith(TEMP_EXTENSION) ) {
+                        deleteIfExists(next);
+                    }
+                }
+            }
+        }
+        if ( ! isDirectory(root) ) {
+            loaded = true;
+            return;
+        }
+        final long start = currentTimeMillis();
+        int count = 0;
+        try (DirectoryStream<Path> stream = newDirectoryStream(root)) {
+            for (Path next : stream) {
+                if ( isDirectory(next) && ! isStagingDirectory(next) ) {
+                    getIndex(next);
+                    count += 1;
+                }
+            }
+        }
+        loaded = true;
+        log.info("Loaded {} object indexes in {} ms, rebuilt from disk: {}.",
+                            new Object[] { count, currentTimeMillis() - start, ! clean });
+    }
+
+    /**
+     * @return <code>true</code> once {@link #load()} has reconciled the journals with the object store,
+     *         a loaded index has every name which is written through the object service
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return sorted view of the object names of the container, the value is <code>true</code> for directories
+     */
+    public NavigableMap<String, Boolean> getNames(final Path container) {
+        return unmodifiableNavigableMap(getIndex(container).names);
+    }
+
+    public void add(final Path container, final Path object, final boolean directory) throws IOException {
+        final Path normalizedContainer = normalize(container);
+        final Path normalizedObject    = normalize(object);
+        if ( normalizedContainer.equals(normalizedObject) ||
+                    ! normalizedObject.startsWith(normalizedContainer) ) {
+            return;
+        }
+        final ContainerIndex index = getIndex(normalizedContainer);
+        Path parent = normalizedObject.getParent();
+        while ( parent != null && ! parent.equals(normalizedContainer) ) {
+            index.add(getName(normalizedContainer, parent), true);
+            parent = parent.getParent();
+        }
+        index.add(getName(normalizedContainer, normalizedObject), directory);
+    }
+
+    public void remove(final Path container, final Path object) throws IOException {
+        final Path normalizedContainer = normalize(container);
+        final Path normalizedObject    = normalize(object);
+        if ( normalizedContainer.equals(normalizedObject) ||
+                    ! normalizedObject.startsWith(normalizedContainer) ) {
+            return;
+        }
+        getIndex(normalizedContainer).remove(getName(normalizedContainer, normalizedObject));
+    }
+
+    /**
+     * Discards the index of the container and its journal.
+     */
+    public void drop(final Path container) throws IOException {
+        final Path normalizedContainer = normalize(container);
+        final ContainerIndex index = indexes.remove(normalizedContainer);
+        if (index != null) {
+            index.discard();
+        }
+        deleteIfExists(getIndexFile(normalizedContainer));
+    }
+
+    /**
+     * Forces every journal to disk and marks the index store as cleanly closed.
+     */
+    @Override
+    public void close() throws IOException {
+        for (ContainerIndex next : indexes.values()) {
+            next.close();
+        }
+        indexes.clear();
+        if (exists(indexStore)) {
+            final Path marker = indexStore.resolve(CLEAN_MARKER);
+            if ( ! exists(marker) ) {
+                createFile(marker);
+            }
+            durable.sync(marker);
+        }
+    }
+
+    protected ContainerIndex getIndex(final Path container) {
+        final Path normalizedContainer = normalize(container);
+        if ( ! root.equals(normalizedContainer.getParent()) ) {
+            throw new CormorantException("Invalid container [" + container + "].");
+        }
+        return indexes.computeIfAbsent(normalizedContainer, this::loadIndex);
+    }
+
+    protected ContainerIndex loadIndex(final Path container) {
+        final Path file = getIndexFile(container);
+        try {
+            createDirectories(indexStore);
+            final ContainerIndex index = new ContainerIndex(file);
+            if (exists(file)) {
+                final boolean complete = index.replay();
+                if ( ! complete ) {
+                    log.warn("Index [{}] is truncated, discarding the incomplete record.", file);
+                }
+                if ( ! complete || index.isCompactable() ) {
+                    index.compact();
+                }
+            } else {
+                if (exists(container)) {
+                    walkFileTree(container, new ObjectIndexVisitor(container, index.names));
+                }
+                index.compact();
+            }
+            index.writable = true;
+            return index;
+        } catch (IOException e) {
+            throw new CormorantException("Unable to load object index [" + file + "].", e);
+        }
+    }
+
+    protected Path getIndexFile(final Path container) {
+        return indexStore.resolve(container.getFileName().toString() + INDEX_EXTENSION);
+    }
+
+    protected Path normalize(final Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    protected String getName(final Path container, final Path object) {
+        return container.relativize(object).toString().replace(CHAR_BACKSLASH, CHAR_FORWARD_SLASH);
+    }
+
+    private class ContainerIndex implements Closeable {
+
+        private final ConcurrentSkipListMap<String, Boolean> names = new ConcurrentSkipListMap<>();
+
+        private final Path file;
+
+        private volatile boolean writable;
+
+        private long records;
+
+        public ContainerIndex(final Path file) {
+            this.file = file;
+        }
+
+        public synchronized void add(final String name, final boolean directory) throws IOException {
+            final Boolean previous = names.put(name, directory);
+            if ( previous == null || previous.booleanValue() != directory ) {
+                append(ADD, name, directory);
+            }
+        }
+
+        public synchronized void remove(final String name) throws IOException {
+            if (names.remove(name) != null) {
+                append(REMOVE, name, false);
+            }
+        }
+
+        /**
+         * Writes the record with a single write and syncs the journal according to the durability mode.
+         * The journal is opened per record so that no descriptor is held for idle containers.
+         */
+        protected void append(final byte operation, final String name, final boolean directory) throws IOException {
+            if ( ! writable ) {
+                return;
+            }
+            final ByteArrayOutputStream record = new ByteArrayOutputStream(name.length() + 4);
+            try (DataOutputStream os = new DataOutputStream(record)) {
+                os.writeByte(operation);
+                os.writeBoolean(directory);
+                os.writeUTF(name);
+            }
+            try (FileChannel channel = open(file, CREATE, WRITE, APPEND)) {
+                final ByteBuffer buffer = ByteBuffer.wrap(record.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            syncer.sync(file);
+            records += 1;
+            if (isCompactable()) {
+                compact();
+            }
+        }
+
+        protected boolean isCompactable() {
+            return records > COMPACT_THRESHOLD && records > 2L * names.size();
+        }
+
+        /**
+         * @return <code>false</code> if the journal ends with an incomplete record
+         */
+        protected boolean replay() throws IOException {
+            try (DataInputStream is = new DataInputStream(new BufferedInputStream(newInputStream(file), BUFFER_SIZE))) {
+                while (true) {
+                    final int operation = is.read();
+                    if (operation < 0) {
+                        return true;
+                    }
+                    final boolean directory = is.readBoolean();
+                    final String  name      = is.readUTF();
+                    if (operation == ADD) {
+                        names.put(name, directory);
+                    } else if (operation == REMOVE) {
+                        names.remove(name);
+                    } else {
+                        return false;
+                    }
+                    records += 1;
+                }
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Rewrites the journal with a single record per name, the new journal is on disk before it replaces the old one.
+         */
+        protected synchronized void compact() throws IOException {
+            final Path temp = file.resolveSibling(file.getFileName().toString() + TEMP_EXTENSION);
+            try (FileChannel channel = open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+                final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(newOutputStream(channel), BUFFER_SIZE));
+                for (Entry<String, Boolean> next : names.entrySet()) {
+                    os.writeByte(ADD);
+                    os.writeBoolean(next.getValue());
+                    os.writeUTF(next.getKey());
+                }
+                os.flush();
+                channel.force(false);
+            }
+            move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            durable.sync(file);
+            records = names.size();
+        }
+
+        public synchronized void discard() {
+            writable = false;
+        }
+
+        /**
+         * Forces the journal to disk, later records are not written.
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (writable) {
+                writable = false;
+                if (exists(file)) {
+                    durable.sync(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.fs;
+
+import static io.webfolder.cormorant.api.fs.StagingArea.isStagingDirectory;
+import static java.nio.file.FileVisitResult.CONTINUE;
+import static java.nio.file.FileVisitResult.SKIP_SUBTREE;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+
+class ObjectIndexVisitor extends SimpleFileVisitor<Path> {
+
+    private static final char CHAR_BACKSLASH     = '\\';
+
+    private static final char CHAR_FORWARD_SLASH = '/';
+
+    private final Path container;
+
+    private final Map<String, Boolean> names;
+
+    public ObjectIndexVisitor(final Path container, final Map<String, Boolean> names) {
+        this.container = container;
+        this.names     = names;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        if (isStagingDirectory(dir)) {
+            return SKIP_SUBTREE;
+        }
+        if ( ! container.equals(dir) ) {
+            names.put(getName(dir), true);
+        }
+        return CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        if ( ! attrs.isDirectory() ) {
+            names.put(getName(file), false);
+        }
+        return CONTINUE;
+    }
+
+    protected String getName(final Path path) {
+        return container.relativize(path).toString().replace(CHAR_BACKSLASH, CHAR_FORWARD_SLASH);
+    }
+}
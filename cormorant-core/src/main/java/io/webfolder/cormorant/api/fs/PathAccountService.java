@@ -23,56 +23,98 @@
 package io.webfolder.cormorant.api.fs;
 
 import static java.nio.file.Files.exists;
-import static java.nio.file.Files.isDirectory;
-import static java.nio.file.Files.list;
 import static java.nio.file.Files.readAttributes;
 import static java.nio.file.Files.walkFileTree;
 import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
-import static java.util.stream.Collectors.toList;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Stream;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.webfolder.cormorant.api.exception.CormorantException;
+import io.webfolder.cormorant.api.fs.ContainerStatsStore.Stats;
 import io.webfolder.cormorant.api.model.Account;
 import io.webfolder.cormorant.api.model.Container;
 import io.webfolder.cormorant.api.service.AccountService;
 
-public class PathAccountService implements AccountService {
+/**
+ * Object count and bytes used of a container are walked once and then maintained by the object write paths.
+ * 
+ * When a stats store is given the counters are flushed to it periodically and survive restarts,
+ * counters left behind by an unclean shutdown are served as they are and reconciled in the background.
+ */
+public class PathAccountService implements AccountService, Closeable {
+
+    private static final long FLUSH_INTERVAL = 5; // seconds
+
+    private static final Logger LOG = LoggerFactory.getLogger(PathAccountService.class);
 
     private Map<String, Container> containers = new ConcurrentHashMap<>();
 
+    private final Map<String, Stats> flushed = new ConcurrentHashMap<>();
+
+    private final Map<String, String> keys = new ConcurrentHashMap<>();
+
     private Path root;
 
+    private final ContainerRegistry registry;
+
+    private final boolean ownsRegistry;
+
+    private final ContainerStatsStore statsStore;
+
+    private final ScheduledExecutorService executor;
+
     public PathAccountService(Path root) {
-        this.root = root;
+        this(root, null);
+    }
+
+    /**
+     * Creates a service with its own container registry, which is closed with the service.
+     */
+    public PathAccountService(final Path root, final Path statsStore) {
+        this(root, statsStore, null);
+    }
+
+    /**
+     * @param registry container registry shared with the container service, closed by its owner
+     */
+    public PathAccountService(final Path root, final Path statsStore, final ContainerRegistry registry) {
+        this.root         = root;
+        this.ownsRegistry = registry == null;
+        this.registry     = ownsRegistry ? new ContainerRegistry(root) : registry;
+        if ( statsStore != null ) {
+            this.statsStore = new ContainerStatsStore(statsStore);
+            this.executor   = newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cormorant-container-stats");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, SECONDS);
+        } else {
+            this.statsStore = null;
+            this.executor   = null;
+        }
     }
     
     protected List<String> getContainers(String accountName) {
-        Stream<Path> list = null;
-        try {
-            list = list(root);
-            return list
-                    .filter(p -> isDirectory(p))
-                    .map(p -> p.getFileName().toString())
-                    .collect(toList());
-        } catch (IOException e) {
-            throw new CormorantException(e);
-        } finally {
-            if ( list != null ) {
-                list.close();
-            }
-        }
+        return registry.getNames();
     }
 
     protected Path getContainerPath(String accountName, String containerName) {
@@ -93,9 +135,17 @@ public class PathAccountService implements AccountService {
     @Override
     public NavigableSet<Container> listContainers(final String accountName) throws IOException {
         final TreeSet<Container> containers = new TreeSet<>();
-        for (final String next : getContainers(accountName)) {
-            final Container container = get(accountName, next);
-            containers.add(container);
+        final List<String>       names      = getContainers(accountName);
+        for (String next : new ArrayList<>(this.containers.keySet())) {
+            if ( ! names.contains(next) ) {
+                remove(next);
+            }
+        }
+        for (final String next : names) {
+            final Container container = load(accountName, next);
+            if ( container != null ) {
+                containers.add(container);
+            }
         }
         return containers;
     }
@@ -104,20 +154,45 @@ public class PathAccountService implements AccountService {
                             final String accountName,
                             final String containerName) throws IOException {
         if (containsContainer(accountName, containerName)) {
-            final Container container = containers.get(containerName);
-            if ( container != null ) {
-                return container;
-            }
+            return load(accountName, containerName);
         } else {
             if (containers.containsKey(containerName)) {
-                containers.remove(containerName);
+                remove(containerName);
             }
         }
-        Container container = get(accountName, containerName);
+        return get(accountName, containerName);
+    }
+
+    protected Container load(
+                            final String accountName,
+                            final String containerName) throws IOException {
+        final Container container = containers.get(containerName);
         if ( container != null ) {
-            this.containers.put(container.getName(), container);
+            return container;
+        }
+        synchronized (this) {
+            if (containers.containsKey(containerName)) {
+                return containers.get(containerName);
+            }
+            final Container loaded = get(accountName, containerName);
+            if ( loaded != null ) {
+                containers.put(loaded.getName(), loaded);
+            }
+            return loaded;
+        }
+    }
+
+    protected void remove(final String containerName) {
+        containers.remove(containerName);
+        flushed.remove(containerName);
+        keys.remove(containerName);
+        if ( statsStore != null ) {
+            try {
+                statsStore.delete(containerName);
+            } catch (IOException e) {
+                LOG.warn("Unable to delete stats of container [" + containerName + "].", e);
+            }
         }
-        return container;
     }
 
     @Override
@@ -144,7 +219,7 @@ public class PathAccountService implements AccountService {
 
     @Override
     public boolean containsContainer(String account, String container) {
-        return getContainers(account).contains(container);
+        return registry.contains(container);
     }
 
     protected Long getContainerTimestamp(
@@ -175,15 +250,125 @@ public class PathAccountService implements AccountService {
         if ( ! exists(path, NOFOLLOW_LINKS) ) {
             return null;
         }
-        final Long            timestamp    = getContainerTimestamp(accountName, containerName);
-        final Long            lastModified = getContainerLastModified(accountName, containerName);
-        final FileSizeVisitor counter      = new FileSizeVisitor();
+        final Long timestamp    = getContainerTimestamp(accountName, containerName);
+        final Long lastModified = getContainerLastModified(accountName, containerName);
+        final Stats stats = statsStore != null ? statsStore.read(containerName) : null;
+        final String key  = getContainerKey(path);
+        keys.put(containerName, key);
+        // stats of a deleted container are never applied to a new container with the same name
+        if ( stats != null && stats.key.equals(key) ) {
+            final Container container = new Container(containerName,
+                                                timestamp,
+                                                lastModified,
+                                                stats.objectCount,
+                                                stats.bytesUsed);
+            // counters are owned by this process from now on, they are clean again after close
+            write(container);
+            if ( ! stats.clean ) {
+                executor.execute(() -> reconcile(path, container));
+            }
+            return container;
+        }
+        final FileSizeVisitor counter = new FileSizeVisitor();
         walkFileTree(path, counter);
         final Container container = new Container(containerName,
                                             timestamp,
                                             lastModified,
                                             counter.getObjectCount(),
                                             counter.getBytesUsed());
+        write(container);
         return container;
     }
+
+    /**
+     * Identifies the container directory, the file key is used where the file system has one.
+     */
+    protected String getContainerKey(final Path path) throws IOException {
+        final BasicFileAttributes attributes = readAttributes(path, BasicFileAttributes.class, NOFOLLOW_LINKS);
+        final Object              fileKey    = attributes.fileKey();
+        return fileKey != null ? fileKey.toString() : String.valueOf(attributes.creationTime().toMillis());
+    }
+
+    /**
+     * Walks the container and replaces its counters with the walk result,
+     * uploads and deletes counted while the walk runs are added on top of it.
+     */
+    public void reconcile(
+                    final String accountName,
+                    final String containerName) throws IOException {
+        final Container container = getContainer(accountName, containerName);
+        if ( container != null ) {
+            reconcile(getContainerPath(accountName, containerName), container);
+        }
+    }
+
+    protected void reconcile(final Path path, final Container container) {
+        final FileSizeVisitor counter = new FileSizeVisitor();
+        try {
+            final long objectCount = container.getObjectCount();
+            final long bytesUsed   = container.getBytesUsed();
+            walkFileTree(path, counter);
+            // adjust by the difference instead of a set so that concurrent updates are kept
+            container.addObjectCount(counter.getObjectCount() - objectCount);
+            container.addBytesUsed(counter.getBytesUsed() - bytesUsed);
+            write(container);
+            LOG.info("Container [{}] reconciled, object count: {}, bytes used: {}.",
+                            new Object[] { container.getName(), counter.getObjectCount(), counter.getBytesUsed() });
+        } catch (IOException e) {
+            LOG.error("Unable to reconcile container [" + container.getName() + "].", e);
+        }
+    }
+
+    /**
+     * Writes the counters of the containers which changed since the last flush.
+     */
+    protected void flush() {
+        for (Container next : containers.values()) {
+            final Stats last = flushed.get(next.getName());
+            if ( last != null &&
+                    last.objectCount == next.getObjectCount().longValue() &&
+                    last.bytesUsed   == next.getBytesUsed().longValue() ) {
+                continue;
+            }
+            try {
+                write(next);
+            } catch (IOException e) {
+                LOG.error("Unable to write stats of container [" + next.getName() + "].", e);
+            }
+        }
+    }
+
+    protected void write(final Container container) throws IOException {
+        write(container, false);
+    }
+
+    protected void write(final Container container, final boolean clean) throws IOException {
+        final String key = keys.get(container.getName());
+        if ( statsStore == null || key == null ) {
+            return;
+        }
+        final Stats stats = new Stats(key,
+                                      container.getObjectCount(),
+                                      container.getBytesUsed(),
+                                      clean);
+        statsStore.write(container.getName(), stats);
+        flushed.put(container.getName(), stats);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if ( executor != null ) {
+            executor.shutdownNow();
+            for (Container next : containers.values()) {
+                write(next, true);
+            }
+        }
+        if ( ownsRegistry ) {
+            registry.close();
+        }
+    }
+
+    public ContainerRegistry getRegistry() {
+        return registry;
+    }
 }
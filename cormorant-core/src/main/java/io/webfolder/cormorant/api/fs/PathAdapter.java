@@ -28,13 +28,19 @@ import static io.webfolder.cormorant.api.resource.ContentFormat.plain;
 import static io.webfolder.cormorant.api.resource.ContentFormat.xml;
 import static java.lang.Boolean.TRUE;
 import static java.nio.file.Files.getLastModifiedTime;
-import static java.nio.file.Files.isDirectory;
 import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static javax.ws.rs.core.HttpHeaders.CONTENT_TYPE;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 import io.webfolder.cormorant.api.Util;
 import io.webfolder.cormorant.api.resource.ContentFormat;
@@ -54,19 +60,42 @@ public class PathAdapter implements ResourceAdapter<Path>, Util {
 
     private static final String  NEW_LINE = "\r\n";
 
+    private static final String  DELETED = "X-Cormorant-Deleted";
+
+    private static final String  DEFAULT_MIME_TYPE = "application/octet-stream";
+
+    private static final String  DIRECTORY = "application/directory";
+
     private final Path container;
 
     private final ObjectService<Path> objectService;
 
     private final MetadataService systemMetadataService;
 
+    private final Map<String, Boolean> directories;
+
+    private Map<String, Map<String, Object>> prefetched = emptyMap();
+
     public PathAdapter(
                     final Path                container,
                     final ObjectService<Path> objectService,
                     final MetadataService     systemMetadataService) {
+        this(container, objectService, systemMetadataService, null);
+    }
+
+    /**
+     * @param directories object names of the container mapped to their directory flag,
+     *                    saves a stat call per entry when available
+     */
+    public PathAdapter(
+                    final Path                 container,
+                    final ObjectService<Path>  objectService,
+                    final MetadataService      systemMetadataService,
+                    final Map<String, Boolean> directories) {
         this.container             = container.toAbsolutePath().normalize();
         this.objectService         = objectService;
         this.systemMetadataService = systemMetadataService;
+        this.directories           = directories;
     }
 
     @Override
@@ -74,23 +103,27 @@ public class PathAdapter implements ResourceAdapter<Path>, Util {
                     final Path          path,
                     final ContentFormat contentFormat,
                     final Boolean       appendForwardSlash) throws IOException, SQLException {
-        final StringBuilder builder        = new StringBuilder();
-        final String        location       = container.relativize(path).toString();
-        final boolean       isdir          = isDirectory(path, NOFOLLOW_LINKS);
-        final String        mimeType       = objectService.getMimeType(container, path, false);
-        final String        name           = location.replace(CHAR_BACKSLASH, CHAR_FORWARD_SLASH);
+        final String        name           = getName(path);
+        final boolean       isdir          = isDirectory(path, name);
         final int           start          = name.lastIndexOf(MANIFEST_EXTENSION);
         final String        normalizedName =  start > 0 ? name.substring(0, start) : name;
+        final String        namespace      = objectService.getNamespace(container, path);
         if (isdir) {
-            final String namespace = objectService.getNamespace(container, path);
-            final boolean deleted = "true".equals(systemMetadataService.get(namespace, "X-Cormorant-Deleted"));
+            final boolean deleted = "true".equals(getSystemMetadata(namespace, DELETED));
             if (deleted) {
                 return null;
             }
         }
-        final long size = isdir ? DIR_SIZE : objectService.getSize(path);
-        final String lastModified = getLastModifiedTime(path, NOFOLLOW_LINKS).toInstant().toString();
-        final String hash = isdir ? MD5_OF_EMPTY_STRING : objectService.calculateChecksum(asList(path));
+        // plain listings contain only the object names,
+        // skip the metadata, size and checksum lookups
+        if (plain.equals(contentFormat)) {
+            return (isdir ? normalizedName + FORWARD_SLASH : normalizedName) + NEW_LINE;
+        }
+        final StringBuilder builder      = new StringBuilder();
+        final String        mimeType     = getMimeType(path, namespace, isdir);
+        final long          size         = isdir ? DIR_SIZE : objectService.getSize(path);
+        final String        lastModified = getLastModifiedTime(path, NOFOLLOW_LINKS).toInstant().toString();
+        final String        hash         = isdir ? MD5_OF_EMPTY_STRING : objectService.calculateChecksum(asList(path));
         if (json.equals(contentFormat)) {
             builder.append("{")
                    .append("\"name\":\"").append(isdir && TRUE.equals(appendForwardSlash) ? normalizedName + FORWARD_SLASH : normalizedName).append("\"").append(",")
@@ -107,10 +140,52 @@ public class PathAdapter implements ResourceAdapter<Path>, Util {
                    .append("<bytes>").append(size).append("</bytes>")
                    .append("<last_modified>").append(lastModified).append("</last_modified>")
                    .append("</object>");
-        } else if (plain.equals(contentFormat)) {
-            builder.append(isdir ? normalizedName + FORWARD_SLASH : normalizedName)
-                   .append(NEW_LINE);
         }
         return builder.toString();
     }
+
+    @Override
+    public void prefetch(final Collection<Path> objects, final ContentFormat contentFormat) throws IOException, SQLException {
+        final List<String> namespaces = new ArrayList<>(objects.size());
+        for (Path next : objects) {
+            // plain listings need only the deleted flag of directories
+            if ( ! plain.equals(contentFormat) || isDirectory(next, getName(next)) ) {
+                namespaces.add(objectService.getNamespace(container, next));
+            }
+        }
+        prefetched = namespaces.isEmpty() ? emptyMap() :
+                            systemMetadataService.getValues(namespaces, asList(CONTENT_TYPE, DELETED));
+    }
+
+    protected String getSystemMetadata(final String namespace, final String key) throws SQLException {
+        final Map<String, Object> values = prefetched.get(namespace);
+        if (values == null) {
+            return systemMetadataService.get(namespace, key);
+        }
+        final Object value = values.get(key);
+        return value == null ? null : String.valueOf(value);
+    }
+
+    protected String getMimeType(final Path path, final String namespace, final boolean isdir) throws IOException, SQLException {
+        if ( ! prefetched.containsKey(namespace) ) {
+            return objectService.getMimeType(container, path, false);
+        }
+        if (isdir) {
+            return DIRECTORY;
+        }
+        final String mimeType = getSystemMetadata(namespace, CONTENT_TYPE);
+        return mimeType != null ? mimeType : DEFAULT_MIME_TYPE;
+    }
+
+    protected String getName(final Path path) {
+        return container.relativize(path).toString().replace(CHAR_BACKSLASH, CHAR_FORWARD_SLASH);
+    }
+
+    protected boolean isDirectory(final Path path, final String name) {
+        final Boolean directory = directories != null ? directories.get(name) : null;
+        if (directory != null) {
+            return directory.booleanValue();
+        }
+        return Files.isDirectory(path, NOFOLLOW_LINKS);
+    }
 }
@@ -23,6 +23,8 @@
 package io.webfolder.cormorant.api.fs;
 
 import static io.webfolder.cormorant.api.fs.EmptyResource.EMPTY_RESOURCE;
+import static io.webfolder.cormorant.api.fs.StagingArea.isStagingDirectory;
+import static java.lang.Boolean.TRUE;
 import static java.lang.Integer.MAX_VALUE;
 import static java.lang.Long.parseLong;
 import static java.nio.file.Files.createDirectory;
@@ -36,6 +38,9 @@ import static java.util.Collections.emptySet;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
 
 import io.webfolder.cormorant.api.exception.CormorantException;
 import io.webfolder.cormorant.api.model.ListContainerOptions;
@@ -56,6 +61,10 @@ public class PathContainerService implements ContainerService<Path> {
 
     private final MetadataService systemMetadataService;
 
+    private final ObjectIndex     objectIndex    ;
+
+    private final ContainerRegistry registry     ;
+
     private ObjectService<Path>   objectService;
 
     public PathContainerService(
@@ -63,10 +72,35 @@ public class PathContainerService implements ContainerService<Path> {
                     final int             pathMaxCount,
                     final MetadataService metadaService,
                     final MetadataService systemMetadataService) {
+        this(root, pathMaxCount, metadaService, systemMetadataService, null);
+    }
+
+    /**
+     * Creates a service with an unwatched container registry, containers created or removed
+     * outside of this service are not seen.
+     */
+    public PathContainerService(
+                    final Path            root,
+                    final int             pathMaxCount,
+                    final MetadataService metadaService,
+                    final MetadataService systemMetadataService,
+                    final ObjectIndex     objectIndex) {
+        this(root, pathMaxCount, metadaService, systemMetadataService, objectIndex, new ContainerRegistry(root, false));
+    }
+
+    public PathContainerService(
+                    final Path              root,
+                    final int               pathMaxCount,
+                    final MetadataService   metadaService,
+                    final MetadataService   systemMetadataService,
+                    final ObjectIndex       objectIndex,
+                    final ContainerRegistry registry) {
         this.root                  = root.toAbsolutePath().normalize();
         this.pathMaxCount          = pathMaxCount                     ;
         this.metadataService       = metadaService                    ;
         this.systemMetadataService = systemMetadataService            ;
+        this.objectIndex           = objectIndex                      ;
+        this.registry              = registry                         ;
     }
 
     @Override
@@ -82,6 +116,15 @@ public class PathContainerService implements ContainerService<Path> {
             return stream;
         }
 
+        if (objectIndex != null) {
+            if ( ! exists(container, NOFOLLOW_LINKS) ) {
+                return stream;
+            }
+            final NavigableMap<String, Boolean> names = objectIndex.getNames(container);
+            return new PathResource(listObjects(container, names, options),
+                                new PathAdapter(container, objectService, systemMetadataService, names));
+        }
+
         Path visitorPath = container;
 
         boolean recursive = true;
@@ -121,15 +164,105 @@ public class PathContainerService implements ContainerService<Path> {
         return stream;
     }
 
+    /**
+     * Keyset pagination over the sorted object names of the container.
+     * 
+     * <code>path</code> is handled as <code>prefix=path/</code> and <code>delimiter=/</code>.
+     * Names which contain <code>/</code> after the prefix are skipped as a whole,
+     * the directory which rolls them up is an entry of the index itself,
+     * so each page costs O(log n) per returned or rolled up entry.
+     * Other delimiters have no directory entry to roll up to, they are ignored like by the file system listing.
+     * When <code>reverse</code> is set, <code>marker</code> is the upper bound and
+     * <code>end_marker</code> is the lower bound of the listing.
+     */
+    protected List<Path> listObjects(
+                                final Path                          container,
+                                final NavigableMap<String, Boolean> names    ,
+                                final ListContainerOptions          options  ) {
+        final String  path      = options.getPath();
+        final String  marker    = options.getMarker();
+        final String  endMarker = options.getEndMarker();
+        final boolean reverse   = TRUE.equals(options.getReverse());
+        final int     limit     = options.getLimit() == null ? pathMaxCount : options.getLimit();
+
+        String prefix    = options.getPrefix();
+        String delimiter = options.getDelimiter();
+
+        if (path != null) {
+            prefix    = path.isEmpty() || path.endsWith(FORWARD_SLASH) ? path : path + FORWARD_SLASH;
+            delimiter = FORWARD_SLASH;
+        }
+        if (prefix != null && prefix.isEmpty()) {
+            prefix = null;
+        }
+        if (delimiter != null && ! FORWARD_SLASH.equals(delimiter)) {
+            delimiter = null;
+        }
+
+        String key;
+        if (reverse) {
+            final String upperBound = prefix == null ? null : successor(prefix);
+            if ( upperBound != null && ( marker == null || upperBound.compareTo(marker) < 0 ) ) {
+                key = names.lowerKey(upperBound);
+            } else {
+                key = marker == null ? ( names.isEmpty() ? null : names.lastKey() ) : names.lowerKey(marker);
+            }
+        } else {
+            if ( prefix != null && ( marker == null || prefix.compareTo(marker) > 0 ) ) {
+                key = names.ceilingKey(prefix);
+            } else {
+                key = marker == null ? ( names.isEmpty() ? null : names.firstKey() ) : names.higherKey(marker);
+            }
+        }
+
+        final int        offset  = prefix == null ? 0 : prefix.length();
+        final List<Path> objects = new ArrayList<>();
+
+        while ( key != null && ( limit < 0 || objects.size() < limit ) ) {
+            if ( endMarker != null &&
+                    ( reverse ? key.compareTo(endMarker) <= 0 : key.compareTo(endMarker) >= 0 ) ) {
+                break;
+            }
+            if ( prefix != null && ! key.startsWith(prefix) ) {
+                break;
+            }
+            final int index = delimiter == null ? -1 : key.indexOf(delimiter, offset);
+            if (index >= 0) {
+                final String rollup = key.substring(0, index + delimiter.length());
+                key = reverse ? names.lowerKey(rollup) : names.ceilingKey(successor(rollup));
+                continue;
+            }
+            objects.add(container.resolve(key));
+            key = reverse ? names.lowerKey(key) : names.higherKey(key);
+        }
+
+        return objects;
+    }
+
+    /**
+     * @return the smallest string which is greater than every string starting with <code>prefix</code>
+     */
+    protected String successor(final String prefix) {
+        final int  last = prefix.length() - 1;
+        final char next = prefix.charAt(last);
+        if (next == Character.MAX_VALUE) {
+            return prefix + Character.MAX_VALUE;
+        }
+        return prefix.substring(0, last) + (char) (next + 1);
+    }
+
     @Override
     public boolean contains(final String accountName, final String containerName) {
         final Path path = getContainer(accountName, containerName);
-        return path != null && exists(path, NOFOLLOW_LINKS) ? true : false;
+        return path != null && registry.contains(containerName);
     }
 
     @Override
     public void create(final String accountName, final String containerName) {
         final Path path = getContainer(accountName, containerName);
+        if ( path != null && isStagingDirectory(path) ) {
+            throw new CormorantException("Invalid container name [" + containerName + "].");
+        }
         if ( path != null && ! exists(path, NOFOLLOW_LINKS) ) {
             if (isRegularFile(path, NOFOLLOW_LINKS)) {
                 final String error = "Unable to create container. Path [" + containerName + "] already exists.";
@@ -137,6 +270,10 @@ public class PathContainerService implements ContainerService<Path> {
             } else {
                 try {
                     createDirectory(path);
+                    registry.add(containerName);
+                    if (objectIndex != null) {
+                        objectIndex.drop(path);
+                    }
                 } catch (IOException e) {
                     throw new CormorantException("Unable to create container [" + containerName + "].", e);
                 }
@@ -160,6 +297,10 @@ public class PathContainerService implements ContainerService<Path> {
             if (empty) {
                 try {
                     walkFileTree(path, new DirectoryDeleteVisitor());
+                    registry.remove(containerName);
+                    if (objectIndex != null) {
+                        objectIndex.drop(path);
+                    }
                     return true;
                 } catch (IOException e) {
                     throw new CormorantException("Unable to delete container [" + containerName + "].", e);
@@ -23,18 +23,23 @@
 package io.webfolder.cormorant.api.fs;
 
 import static io.webfolder.cormorant.api.Json.read;
+import static io.webfolder.cormorant.api.fs.StagingArea.isStagingDirectory;
 import static io.webfolder.cormorant.api.metadata.MetadataServiceFactory.MANIFEST_EXTENSION;
 import static io.webfolder.otmpfile.SecureTempFile.SUPPORT_O_TMPFILE;
+import static java.lang.Boolean.FALSE;
+import static java.lang.Boolean.TRUE;
 import static java.lang.String.format;
 import static java.nio.channels.Channels.newInputStream;
 import static java.nio.channels.Channels.newReader;
 import static java.nio.channels.FileChannel.open;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.nio.file.Files.createDirectories;
 import static java.nio.file.Files.createTempFile;
 import static java.nio.file.Files.exists;
+import static java.nio.file.Files.getFileAttributeView;
 import static java.nio.file.Files.getLastModifiedTime;
 import static java.nio.file.Files.isReadable;
+import static java.nio.file.Files.isRegularFile;
 import static java.nio.file.Files.move;
 import static java.nio.file.Files.readAttributes;
 import static java.nio.file.Files.size;
@@ -45,6 +50,7 @@ import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.WRITE;
 import static java.security.MessageDigest.getInstance;
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.unmodifiableMap;
 import static java.util.Locale.ENGLISH;
@@ -54,11 +60,13 @@ import static net.jodah.expiringmap.ExpirationPolicy.CREATED;
 import static net.jodah.expiringmap.ExpiringMap.builder;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.SequenceInputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
@@ -66,6 +74,8 @@ import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
@@ -74,6 +84,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Vector;
 
 import org.slf4j.Logger;
@@ -105,25 +116,52 @@ public class PathObjectService implements ObjectService<Path>, Util {
 
     private static final int     BUFFER_SIZE       = 1024 * 256;
 
+    private static final String  ETAG_ATTRIBUTE    = "cormorant.etag";
+
+    private static final int     ETAG_VALUE_SIZE   = 128;
+
     private final Map<Object, String> cache;
 
     private final ContainerService<Path> containerService;
 
     private final MetadataService systemMetadataService;
 
+    private final ObjectIndex objectIndex;
+
+    private final FileSyncer syncer;
+
     private final Logger log                    = LoggerFactory.getLogger(PathObjectService.class);
 
     private final Map<String, String> mimeTypes = loadMimeTypes();
 
     private final boolean useSecureTempFile     = SUPPORT_O_TMPFILE;
 
+    private final StagingArea stagingArea       = new StagingArea();
+
     private final boolean useFastMd5            = useFastMd5();
 
     public PathObjectService(
                 final ContainerService<Path> containerService,
                 final MetadataService        systemMetadataService) {
+        this(containerService, systemMetadataService, null);
+    }
+
+    public PathObjectService(
+                final ContainerService<Path> containerService,
+                final MetadataService        systemMetadataService,
+                final ObjectIndex            objectIndex) {
+        this(containerService, systemMetadataService, objectIndex, new FileSyncer(Durability.None));
+    }
+
+    public PathObjectService(
+                final ContainerService<Path> containerService,
+                final MetadataService        systemMetadataService,
+                final ObjectIndex            objectIndex,
+                final FileSyncer             syncer) {
         this.containerService      = containerService;
         this.systemMetadataService = systemMetadataService;
+        this.objectIndex           = objectIndex;
+        this.syncer                = syncer;
         cache = builder()
                 .expirationPolicy(CREATED)
                 .expiration(1, DAYS)
@@ -132,21 +170,25 @@ public class PathObjectService implements ObjectService<Path>, Util {
         log.info("==========================================================");
         log.info("Use secure temp file (O_TMPFILE): {}", useSecureTempFile ? "true" : "false");
         log.info("Use fast MD5                    : {}", useFastMd5        ? "true" : "false");
+        log.info("Durability                      : {}", syncer.getDurability());
     }
 
     @Override
     public TempObject<Path> createTempObject(String accontName, Path container) throws IOException, SQLException {
-        if (useSecureTempFile) {
+        // staged on the volume of the container, moveObject is always a rename
+        final Path directory = stagingArea.getDirectory(container);
+        // the anonymous file is created in the temp directory, it can only be linked on the same volume
+        if (useSecureTempFile && stagingArea.isTempDirectoryVolume(directory)) {
             SecureTempFile secureTempFile = new SecureTempFile();
             boolean create = secureTempFile.create();
             if (create) {
-                SecureTempObject secureTempObject = new SecureTempObject(secureTempFile);
+                SecureTempObject secureTempObject = new SecureTempObject(secureTempFile, directory);
                 return secureTempObject;
             } else {
-                return new DefaultTempObject<Path>(createTempFile("cormorant", ".new"), this);
+                return new DefaultTempObject<Path>(createTempFile(directory, "cormorant", ".new"), this);
             }
         } else {
-            return new DefaultTempObject<Path>(createTempFile("cormorant", ".new"), this);
+            return new DefaultTempObject<Path>(createTempFile(directory, "cormorant", ".new"), this);
         }
     }
 
@@ -155,6 +197,11 @@ public class PathObjectService implements ObjectService<Path>, Util {
         Files.delete(tempObject);
     }
 
+    @Override
+    public Closeable admitUpload(final Path container, final long size) throws IOException {
+        return SpaceAdmission.admit(stagingArea.getDirectory(container), size);
+    }
+
     @Override
     public Path moveObject(
                 final String accountName,
@@ -164,9 +211,14 @@ public class PathObjectService implements ObjectService<Path>, Util {
         final Path target       = targetContainer.resolve(targetObject).toAbsolutePath().normalize();
         final Path targetParent = target.getParent();
         if ( ! exists(targetParent, NOFOLLOW_LINKS) ) {
-            createDirectories(targetParent);
+            syncer.createDirectories(targetParent);
+        }
+        final Path movedObject = move(sourceObject, target, ATOMIC_MOVE);
+        syncer.sync(movedObject);
+        if (objectIndex != null) {
+            objectIndex.add(targetContainer, movedObject, false);
         }
-        return move(sourceObject, target, ATOMIC_MOVE);
+        return movedObject;
     }
 
     @Override
@@ -192,6 +244,21 @@ public class PathObjectService implements ObjectService<Path>, Util {
             return null;
         }
         final Path manifest = objectAbsolutePath.getParent().resolve(objectAbsolutePath.getFileName() + MANIFEST_EXTENSION);
+        if ( objectIndex != null && objectIndex.isLoaded() ) {
+            final NavigableMap<String, Boolean> names = objectIndex.getNames(container);
+            final String                        name  = relativize(container, objectAbsolutePath);
+            // a miss of the object index costs a single lookup per name instead of the full probe below,
+            // objects which are added out of band are found on disk and added to the index
+            if ( ! names.containsKey(name + MANIFEST_EXTENSION) && ! FALSE.equals(names.get(name)) ) {
+                if (isRegularFile(manifest, NOFOLLOW_LINKS)) {
+                    objectIndex.add(container, manifest, false);
+                } else if (isRegularFile(objectAbsolutePath, NOFOLLOW_LINKS)) {
+                    objectIndex.add(container, objectAbsolutePath, false);
+                } else {
+                    return null;
+                }
+            }
+        }
         if (exists(manifest, NOFOLLOW_LINKS) && isReadable(manifest)) {
             return manifest;
         }
@@ -213,6 +280,9 @@ public class PathObjectService implements ObjectService<Path>, Util {
     @Override
     public void delete(final Path container, final Path object) throws IOException, SQLException {
         Files.delete(object);
+        if (objectIndex != null) {
+            objectIndex.remove(container, object);
+        }
     }
 
     @Override
@@ -245,7 +315,11 @@ public class PathObjectService implements ObjectService<Path>, Util {
         if ( ! directory.startsWith(container) ) {
             throw new CormorantException("Invalid directory path.");
         }
-        return createDirectories(directory);
+        final Path createdDirectory = syncer.createDirectories(directory);
+        if (objectIndex != null) {
+            objectIndex.add(container, createdDirectory, true);
+        }
+        return createdDirectory;
     }
 
     @Override
@@ -258,6 +332,20 @@ public class PathObjectService implements ObjectService<Path>, Util {
     @Override
     public Path getDirectory(Path container, String directoryPath) throws IOException, SQLException {
         final Path dir = container.resolve(directoryPath);
+        if ( objectIndex != null && objectIndex.isLoaded() ) {
+            final Path normalizedContainer = container.toAbsolutePath().normalize();
+            final Path normalizedDirectory = dir.toAbsolutePath().normalize();
+            if ( ! normalizedDirectory.equals(normalizedContainer) &&
+                        normalizedDirectory.startsWith(normalizedContainer) &&
+                        ! TRUE.equals(objectIndex.getNames(normalizedContainer).get(relativize(normalizedContainer, normalizedDirectory))) ) {
+                // created out of band, see getObject
+                if (Files.isDirectory(normalizedDirectory, NOFOLLOW_LINKS)) {
+                    objectIndex.add(normalizedContainer, normalizedDirectory, true);
+                    return dir;
+                }
+                return null;
+            }
+        }
         if (isDirectory(container, dir)) {
             return dir;
         }
@@ -286,7 +374,7 @@ public class PathObjectService implements ObjectService<Path>, Util {
         final Path targetObject = destinationContainer.resolve(destinationObjectPath);
         final Path targetParent = targetObject.getParent();
         if ( ! Files.exists(targetParent, NOFOLLOW_LINKS) ) {
-            Files.createDirectories(targetParent);
+            syncer.createDirectories(targetParent);
         }
         
         final List<Path> dynamicLargeObjects = listDynamicLargeObject(sourceContainer, sourceObject);
@@ -295,16 +383,15 @@ public class PathObjectService implements ObjectService<Path>, Util {
 
         if (sourceObject.equals(targetObject)) {
             return targetObject;
-        } else if (dynamicLargeObject) {
+        }
+
+        if (dynamicLargeObject) {
             Vector<InputStream> streams = new Vector<>();
             for (Path next : dynamicLargeObjects) {
                 InputStream is = Files.newInputStream(next, READ);
                 streams.add(is);
             }
-            try (SequenceInputStream sequenceInputStream = new SequenceInputStream(streams.elements())) {
-                Files.copy(sequenceInputStream, targetObject, REPLACE_EXISTING);
-                return targetObject;
-            }
+            copyObject(new SequenceInputStream(streams.elements()), targetObject);
         } else if ( staticLargeObject && ! "get".equals(multipartManifest) ) {
             List<Segment<Path>> segments = listStaticLargeObject(sourceAccount, sourceObject);
             Vector<InputStream> streams = new Vector<>();
@@ -312,19 +399,34 @@ public class PathObjectService implements ObjectService<Path>, Util {
                 InputStream is = Files.newInputStream(next.getObject(), READ);
                 streams.add(is);
             }
-            try (SequenceInputStream sequenceInputStream = new SequenceInputStream(streams.elements())) {
-                Files.copy(sequenceInputStream, targetObject, REPLACE_EXISTING);
-                return targetObject;
-            }
+            copyObject(new SequenceInputStream(streams.elements()), targetObject);
         } else {
-            return Files.copy(sourceObject, targetObject, REPLACE_EXISTING);
+            final String checksum = getChecksum(sourceObject);
+            Files.copy(sourceObject, targetObject, REPLACE_EXISTING);
+            setChecksum(targetObject, checksum);
         }
+        syncer.sync(targetObject);
+        if (objectIndex != null) {
+            objectIndex.add(destinationContainer, targetObject, false);
+        }
+        return targetObject;
+    }
+
+    protected Path copyObject(final InputStream is, final Path targetObject) throws IOException, SQLException {
+        final MessageDigest digest = createMessageDigest();
+        try (InputStream digestInputStream = new DigestInputStream(is, digest)) {
+            Files.copy(digestInputStream, targetObject, REPLACE_EXISTING);
+        }
+        setChecksum(targetObject, format("%032x", new BigInteger(1, digest.digest())));
+        return targetObject;
     }
 
     @Override
     public boolean isValidPath(Path container, String objectPath) throws IOException, SQLException {
         try {
-            return container.resolve(objectPath).startsWith(container);
+            final Path path = container.resolve(objectPath).normalize();
+            // the staging directory name is reserved at the top of a container
+            return path.startsWith(container) && ! isStagingDirectory(container.relativize(path).getName(0));
         } catch (InvalidPathException e) {
             return false;
         }
@@ -451,68 +553,146 @@ public class PathObjectService implements ObjectService<Path>, Util {
 
     @Override
     public String calculateChecksum(List<Path> objects) throws IOException, SQLException {
+        if (objects.size() == 1) {
+            return getChecksum(objects.get(0));
+        }
         StringBuilder fileId = new StringBuilder();
         for (final Path next : objects) {
-            BasicFileAttributes attributes = readAttributes(next, BasicFileAttributes.class, NOFOLLOW_LINKS);
-            String pathId = next.toString();
-            Object fileKey = attributes.fileKey();
-            if ( fileKey != null ) {
-                fileId.append(fileKey.toString());
-            } else {
-                fileId.append(next.toString());
-            }
-            fileId.append(pathId);
-            fileId.append(attributes.size());
-            fileId.append(attributes.lastModifiedTime().toMillis());
+            fileId.append(getFileId(next, readAttributes(next, BasicFileAttributes.class, NOFOLLOW_LINKS)));
         }
         String cachedHash = cache.get(fileId.toString());
         if ( cachedHash != null ) {
             return cachedHash;
         }
+        final String hashHexValue = digest(objects);
+        cache.put(fileId.toString(), hashHexValue);
+        return hashHexValue;
+    }
+
+    /**
+     * Large object checksum is the MD5 of the concatenated checksums of its segments.
+     */
+    @Override
+    public String calculateLargeObjectChecksum(List<Path> segments) throws IOException, SQLException {
+        final MessageDigest digest = createMessageDigest();
+        for (final Path next : segments) {
+            digest.update(getChecksum(next).getBytes(US_ASCII));
+        }
+        return format("%032x", new BigInteger(1, digest.digest()));
+    }
 
-        boolean useNativeMd5 = useFastMd5 && objects.size() == 1;
+    @Override
+    public void setChecksum(final Path object, final String checksum) throws IOException, SQLException {
+        final BasicFileAttributes attributes = readAttributes(object, BasicFileAttributes.class, NOFOLLOW_LINKS);
+        final String              etag       = checksum.toLowerCase(ENGLISH);
+        cache.put(getFileId(object, attributes), etag);
+        writeChecksum(object, attributes, etag);
+    }
 
-        String hashHexValue = null;
+    /**
+     * Returns the checksum of a single object.
+     * 
+     * Lookup order is the in-memory cache, the checksum stored in the
+     * user defined attribute of the file and finally MD5 of the file content.
+     * Stored checksum is valid only if size and last modified time of the file are not changed.
+     */
+    protected String getChecksum(final Path object) throws IOException {
+        final BasicFileAttributes attributes = readAttributes(object, BasicFileAttributes.class, NOFOLLOW_LINKS);
+        final String              fileId     = getFileId(object, attributes);
+        String checksum = cache.get(fileId);
+        if ( checksum != null ) {
+            return checksum;
+        }
+        checksum = readChecksum(object, attributes);
+        if ( checksum == null ) {
+            checksum = digest(asList(object));
+            writeChecksum(object, attributes, checksum);
+        }
+        cache.put(fileId, checksum);
+        return checksum;
+    }
 
-        if (useNativeMd5) {
-            hashHexValue = Md5.generate(objects.get(0).toAbsolutePath().toString());
+    protected String readChecksum(final Path object, final BasicFileAttributes attributes) {
+        final UserDefinedFileAttributeView view = getFileAttributeView(object, UserDefinedFileAttributeView.class, NOFOLLOW_LINKS);
+        if ( view == null || ! attributes.isRegularFile() ) {
+            return null;
         }
+        final ByteBuffer buffer = ByteBuffer.allocate(ETAG_VALUE_SIZE);
+        try {
+            view.read(ETAG_ATTRIBUTE, buffer);
+        } catch (IOException e) {
+            // attribute does not exist or user defined attributes are not supported by the file store
+            return null;
+        }
+        buffer.flip();
+        final String[] value = UTF_8.decode(buffer).toString().split(":");
+        if ( value.length != 3 ) {
+            return null;
+        }
+        final String size         = String.valueOf(attributes.size());
+        final String lastModified = String.valueOf(attributes.lastModifiedTime().toMillis());
+        if ( size.equals(value[1]) && lastModified.equals(value[2]) ) {
+            return value[0];
+        }
+        return null;
+    }
 
-        if (hashHexValue == null) {
-            MessageDigest digest = null;
-            try {
-                digest = getInstance(MD5_CHECKSUM);
-            } catch (NoSuchAlgorithmException e) {
-                throw new CormorantException(e);
+    protected void writeChecksum(final Path object, final BasicFileAttributes attributes, final String checksum) {
+        final UserDefinedFileAttributeView view = getFileAttributeView(object, UserDefinedFileAttributeView.class, NOFOLLOW_LINKS);
+        if ( view == null || ! attributes.isRegularFile() ) {
+            return;
+        }
+        final String value = checksum + ":" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+        try {
+            view.write(ETAG_ATTRIBUTE, UTF_8.encode(value));
+        } catch (IOException e) {
+            log.debug("Unable to store checksum of [{}]. {}", new Object[] {
+                object, e.getMessage()
+            });
+        }
+    }
+
+    protected String getFileId(final Path object, final BasicFileAttributes attributes) {
+        final StringBuilder fileId = new StringBuilder();
+        Object fileKey = attributes.fileKey();
+        if ( fileKey != null ) {
+            fileId.append(fileKey.toString());
+        } else {
+            fileId.append(object.toString());
+        }
+        fileId.append(object.toString());
+        fileId.append(attributes.size());
+        fileId.append(attributes.lastModifiedTime().toMillis());
+        return fileId.toString();
+    }
+
+    protected String digest(final List<Path> objects) throws IOException {
+        if (useFastMd5 && objects.size() == 1) {
+            final String hashHexValue = Md5.generate(objects.get(0).toAbsolutePath().toString());
+            if ( hashHexValue != null ) {
+                return hashHexValue.toLowerCase(ENGLISH);
             }
-            fileId = new StringBuilder();
-            for (final Path next : objects) {
-                BasicFileAttributes attributes = readAttributes(next, BasicFileAttributes.class, NOFOLLOW_LINKS);
-                String pathId = next.toString();
-                Object fileKey = attributes.fileKey();
-                if ( fileKey != null ) {
-                    fileId.append(fileKey.toString());
-                } else {
-                    fileId.append(next.toString());
-                }
-                fileId.append(pathId);
-                fileId.append(attributes.size());
-                fileId.append(attributes.lastModifiedTime().toMillis());
-
-                try (InputStream is = newInputStream(open(next, NOFOLLOW_LINKS, READ))) {
-                    final byte[] buffer = new byte[BUFFER_SIZE];
-                    int read;
-                    while((read = is.read(buffer)) > 0) {
-                        digest.update(buffer, 0, read);
-                    }
+        }
+        final MessageDigest digest = createMessageDigest();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        for (final Path next : objects) {
+            try (InputStream is = newInputStream(open(next, NOFOLLOW_LINKS, READ))) {
+                int read;
+                while((read = is.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
                 }
             }
-            final byte[] hash =  digest.digest();
-            hashHexValue = format("%032x", new BigInteger(1, hash));
         }
+        final byte[] hash =  digest.digest();
+        return format("%032x", new BigInteger(1, hash));
+    }
 
-        cache.put(fileId.toString(), hashHexValue.toLowerCase(ENGLISH));
-        return hashHexValue;
+    protected MessageDigest createMessageDigest() {
+        try {
+            return getInstance(MD5_CHECKSUM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new CormorantException(e);
+        }
     }
 
     protected boolean useFastMd5() {
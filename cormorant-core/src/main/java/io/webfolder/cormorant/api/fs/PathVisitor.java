@@ -22,8 +22,10 @@
  */
 package io.webfolder.cormorant.api.fs;
 
+import static io.webfolder.cormorant.api.fs.StagingArea.isStagingDirectory;
 import static java.lang.Boolean.TRUE;
 import static java.nio.file.FileVisitResult.CONTINUE;
+import static java.nio.file.FileVisitResult.SKIP_SUBTREE;
 import static java.nio.file.FileVisitResult.TERMINATE;
 
 import java.io.IOException;
@@ -80,6 +82,9 @@ class PathVisitor extends SimpleFileVisitor<Path> implements Iterable<Path> {
 
     @Override
     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        if (isStagingDirectory(dir)) {
+            return SKIP_SUBTREE;
+        }
         FileVisitResult visit = visit(dir);
         if ( limit >= 0 && count.get() >= limit ) {
             return TERMINATE;
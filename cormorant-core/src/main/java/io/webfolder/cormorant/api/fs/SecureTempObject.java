@@ -45,8 +45,18 @@ public class SecureTempObject implements TempObject<Path> {
 
     private static final String TEMP_DIR = getProperty("java.io.tmpdir");
 
+    private final Path directory;
+
     public SecureTempObject(SecureTempFile secureTempFile) {
+        this(secureTempFile, get(TEMP_DIR));
+    }
+
+    /**
+     * @param directory the anonymous file is linked into this directory, it must be on the volume the file was created on
+     */
+    public SecureTempObject(SecureTempFile secureTempFile, Path directory) {
         this.secureTempFile = secureTempFile;
+        this.directory      = directory;
     }
 
     @Override
@@ -58,7 +68,7 @@ public class SecureTempObject implements TempObject<Path> {
     public Path toObject() {
         if (path == null) {
             String name = toHexString(RANDOM.nextLong()) + toHexString(RANDOM.nextLong());
-            path = get(TEMP_DIR).resolve(name).toAbsolutePath();
+            path = directory.resolve(name).toAbsolutePath();
             secureTempFile.setName(path.toString());
         }
         return path;
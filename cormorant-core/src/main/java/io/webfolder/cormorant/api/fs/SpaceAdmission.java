@@ -0,0 +1,89 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.fs;
+
+import static java.nio.file.Files.getFileStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.webfolder.cormorant.api.exception.CormorantException;
+
+/**
+ * Admission control for uploads with a known length.
+ * 
+ * An upload is admitted only if the usable space of the volume, minus the bytes admitted for the
+ * other uploads on the same {@link FileStore} which are not written yet, can hold it.
+ * Nothing is allocated on disk, the file still grows while the body is written.
+ * The admitted bytes are released when the admission is closed.
+ */
+public class SpaceAdmission implements Closeable {
+
+    private static final int                       INSUFFICIENT_STORAGE = 507;
+
+    private static final Map<FileStore, AtomicLong> ADMITTED            = new ConcurrentHashMap<>();
+
+    private final AtomicLong    admitted;
+
+    private final long          size    ;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private SpaceAdmission(final AtomicLong admitted, final long size) {
+        this.admitted = admitted;
+        this.size     = size    ;
+    }
+
+    /**
+     * @param directory any directory on the volume
+     *
+     * @throws CormorantException with status <code>507</code> if the volume does not have enough space
+     */
+    public static SpaceAdmission admit(final Path directory, final long size) throws IOException {
+        final FileStore  store    = getFileStore(directory);
+        final AtomicLong admitted = ADMITTED.computeIfAbsent(store, key -> new AtomicLong());
+        final long       usable   = store.getUsableSpace();
+        while (true) {
+            final long current = admitted.get();
+            if (usable - current < size) {
+                throw new CormorantException("Not enough space to store [" + size + "] bytes.", INSUFFICIENT_STORAGE);
+            }
+            if (admitted.compareAndSet(current, current + size)) {
+                return new SpaceAdmission(admitted, size);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            admitted.addAndGet(-size);
+        }
+    }
+}
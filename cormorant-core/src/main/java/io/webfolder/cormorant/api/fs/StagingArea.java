@@ -0,0 +1,146 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.fs;
+
+import static java.lang.Boolean.FALSE;
+import static java.lang.System.getProperty;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.getFileStore;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.list;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.Paths.get;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.webfolder.cormorant.api.exception.CormorantException;
+
+/**
+ * Staging directories for uploads, one per volume of the object store.
+ * 
+ * Uploads are written next to their final location so that publishing them is a rename
+ * within the same file system. The staging directory of the object store volume is
+ * <code>&lt;root&gt;/.cormorant-tmp</code>, where the root is the parent of the containers.
+ * A container mounted from another volume gets its own staging directory inside the container.
+ * Staging directories are never reported as containers or objects.
+ */
+class StagingArea {
+
+    static final String STAGING_DIRECTORY = ".cormorant-tmp";
+
+    private final Map<Path, Path> directories = new ConcurrentHashMap<>();
+
+    private final Logger log = LoggerFactory.getLogger(StagingArea.class);
+
+    private final Map<Path, Path> rootDirectories = new ConcurrentHashMap<>();
+
+    private final Map<Path, Boolean> tempDirectoryVolumes = new ConcurrentHashMap<>();
+
+    private static final String TEMP_DIR = getProperty("java.io.tmpdir");
+
+    static boolean isStagingDirectory(final Path path) {
+        final Path fileName = path.getFileName();
+        return fileName != null && STAGING_DIRECTORY.equals(fileName.toString());
+    }
+
+    /**
+     * @return staging directory on the same volume as the container
+     */
+    Path getDirectory(final Path container) {
+        final Path normalizedContainer = container.toAbsolutePath().normalize();
+        final Path directory = directories.computeIfAbsent(normalizedContainer, this::lookup);
+        if ( directory.getParent().equals(normalizedContainer) ) {
+            try {
+                // the container may have been deleted and created again
+                createDirectories(directory);
+            } catch (IOException e) {
+                throw new CormorantException("Unable to create staging directory [" + directory + "].", e);
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * @return <code>true</code> if the staging directory is on the same volume as <code>java.io.tmpdir</code>
+     */
+    boolean isTempDirectoryVolume(final Path directory) {
+        return tempDirectoryVolumes.computeIfAbsent(directory, d -> {
+            try {
+                return getFileStore(d).equals(getFileStore(get(TEMP_DIR)));
+            } catch (IOException e) {
+                return FALSE;
+            }
+        });
+    }
+
+    protected Path lookup(final Path container) {
+        try {
+            final Path      root  = container.getParent();
+            final FileStore store = getFileStore(container);
+            if (store.equals(getFileStore(root))) {
+                return getRootDirectory(root);
+            }
+            final Path directory = container.resolve(STAGING_DIRECTORY);
+            prepare(directory);
+            log.info("Container [{}] is on volume [{}], staging directory [{}] is used.", container, store, directory);
+            return directory;
+        } catch (IOException e) {
+            throw new CormorantException("Unable to create staging directory for container [" + container + "].", e);
+        }
+    }
+
+    protected synchronized Path getRootDirectory(final Path root) throws IOException {
+        Path directory = rootDirectories.get(root);
+        if ( directory == null ) {
+            directory = root.resolve(STAGING_DIRECTORY);
+            prepare(directory);
+            rootDirectories.put(root, directory);
+        }
+        return directory;
+    }
+
+    protected void prepare(final Path directory) throws IOException {
+        createDirectories(directory);
+        // uploads left behind by a previous run are never published
+        try (Stream<Path> stream = list(directory)) {
+            stream.filter(p -> isRegularFile(p, NOFOLLOW_LINKS)).forEach(this::delete);
+        }
+    }
+
+    protected void delete(final Path file) {
+        try {
+            deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Unable to delete staged upload [" + file + "].", e);
+        }
+    }
+}
@@ -35,4 +35,8 @@ public interface CacheNames {
     String TOKENS     = "authentication/tokens";
 
     String USERS      = "authentication/users" ;
+
+    String OBJECTS    = "index/objects"        ;
+
+    String CONTAINERS = "index/containers"     ;
 }
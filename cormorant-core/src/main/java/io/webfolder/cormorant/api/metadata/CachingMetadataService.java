@@ -0,0 +1,206 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.metadata;
+
+import static java.lang.String.valueOf;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static net.jodah.expiringmap.ExpirationPolicy.ACCESSED;
+import static net.jodah.expiringmap.ExpiringMap.builder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.webfolder.cormorant.api.service.MetadataService;
+
+/**
+ * Read-through cache of the values of a namespace.
+ * 
+ * Writes go to the underlying service first and then invalidate the namespace.
+ * A value loaded while a write is in progress is not cached.
+ */
+public class CachingMetadataService implements MetadataService, Closeable {
+
+    private static final int EXPIRATION = 10;
+
+    private final MetadataService metadataService;
+
+    private final Map<String, Map<String, Object>> cache;
+
+    private final AtomicLong hits          = new AtomicLong();
+
+    private final AtomicLong misses        = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public CachingMetadataService(final MetadataService metadataService, final int maxSize) {
+        this.metadataService = metadataService;
+        this.cache           = builder()
+                                    .expirationPolicy(ACCESSED)
+                                    .expiration(EXPIRATION, MINUTES)
+                                    .maxSize(maxSize)
+                                .build();
+    }
+
+    @Override
+    public void init() throws SQLException {
+        metadataService.init();
+    }
+
+    @Override
+    public String get(final String namespace, final String key) throws SQLException {
+        final Object value = load(namespace).get(key);
+        return value == null ? null : valueOf(value);
+    }
+
+    @Override
+    public boolean contains(final String namespace, final String key) throws SQLException {
+        return load(namespace).get(key) != null;
+    }
+
+    @Override
+    public void update(final String namespace, final String key, final String value) throws SQLException {
+        try {
+            metadataService.update(namespace, key, value);
+        } finally {
+            invalidate(namespace);
+        }
+    }
+
+    @Override
+    public void add(final String namespace, final String key, final String value) throws SQLException {
+        try {
+            metadataService.add(namespace, key, value);
+        } finally {
+            invalidate(namespace);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getValues(final String namespace) throws SQLException {
+        return new HashMap<>(load(namespace));
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> getValues(
+                                                final Collection<String> namespaces,
+                                                final Collection<String> keys) throws SQLException {
+        final Map<String, Map<String, Object>> values  = new HashMap<>();
+        final List<String>                     missing = new ArrayList<>();
+        for (String namespace : namespaces) {
+            final Map<String, Object> cached = cache.get(namespace);
+            if (cached == null) {
+                missing.add(namespace);
+            } else {
+                hits.incrementAndGet();
+                final Map<String, Object> namespaceValues = new HashMap<>(cached);
+                namespaceValues.keySet().retainAll(keys);
+                values.put(namespace, namespaceValues);
+            }
+        }
+        if ( ! missing.isEmpty() ) {
+            // partial results are not cached, only a subset of the keys is loaded
+            misses.addAndGet(missing.size());
+            values.putAll(metadataService.getValues(missing, keys));
+        }
+        return values;
+    }
+
+    @Override
+    public void setValues(final String namespace, final Map<String, Object> values) throws SQLException {
+        try {
+            metadataService.setValues(namespace, values);
+        } finally {
+            invalidate(namespace);
+        }
+    }
+
+    @Override
+    public void delete(final String namespace, final String key) throws SQLException {
+        try {
+            metadataService.delete(namespace, key);
+        } finally {
+            invalidate(namespace);
+        }
+    }
+
+    @Override
+    public void delete(final String namespace) throws SQLException {
+        try {
+            metadataService.delete(namespace);
+        } finally {
+            invalidate(namespace);
+        }
+    }
+
+    protected Map<String, Object> load(final String namespace) throws SQLException {
+        final Map<String, Object> cached = cache.get(namespace);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        final long generation = invalidations.get();
+        final Map<String, Object> values = unmodifiableMap(new HashMap<>(metadataService.getValues(namespace)));
+        synchronized (invalidations) {
+            if (generation == invalidations.get()) {
+                cache.put(namespace, values);
+            }
+        }
+        return values;
+    }
+
+    protected void invalidate(final String namespace) {
+        synchronized (invalidations) {
+            invalidations.incrementAndGet();
+            cache.remove(namespace);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        cache.clear();
+        if (metadataService instanceof Closeable) {
+            ((Closeable) metadataService).close();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+}
@@ -22,43 +22,104 @@
  */
 package io.webfolder.cormorant.api.metadata;
 
+import static io.webfolder.cormorant.api.fs.Durability.None;
 import static io.webfolder.cormorant.api.metadata.CacheNames.ACCOUNT;
 import static io.webfolder.cormorant.api.metadata.CacheNames.CONTAINER;
 import static io.webfolder.cormorant.api.metadata.CacheNames.OBJECT;
 import static io.webfolder.cormorant.api.metadata.CacheNames.OBJECT_SYS;
 import static io.webfolder.cormorant.api.metadata.MetadataStorage.File;
+import static io.webfolder.cormorant.api.metadata.MetadataStorage.Log;
 import static io.webfolder.cormorant.api.metadata.MetadataStorage.SQLite;
+import static io.webfolder.cormorant.api.metadata.MetadataStorage.SQLiteWAL;
+import static io.webfolder.cormorant.api.metadata.MetadataStorage.Xattr;
 import static java.nio.file.Files.createDirectories;
 import static java.nio.file.Files.exists;
 import static java.nio.file.Files.isDirectory;
 import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
 import static java.util.ServiceLoader.load;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.Iterator;
 import java.util.ServiceLoader;
 
+import io.webfolder.cormorant.api.CormorantConfiguration;
 import io.webfolder.cormorant.api.DataSourceFactory;
+import io.webfolder.cormorant.api.PooledDataSourceFactory;
 import io.webfolder.cormorant.api.SQLiteDataSourceFactory;
 import io.webfolder.cormorant.api.exception.CormorantException;
+import io.webfolder.cormorant.api.fs.FileSyncer;
 import io.webfolder.cormorant.api.service.MetadataService;
 
-public class DefaultMetadataServiceFactory implements MetadataServiceFactory {
+public class DefaultMetadataServiceFactory implements MetadataServiceFactory, Closeable {
 
     private final Path              metadataStore;
 
+    private final Path              objectStore  ;
+
     private final DataSourceFactory dsFactory    ;
 
     private final MetadataStorage   storage      ;
 
+    private final JdbcMetadataWriter writer     ;
+
+    private final int               cacheSize    ;
+
+    private final FileSyncer        syncer       ;
+
     public DefaultMetadataServiceFactory(final Path metadataStore, final MetadataStorage storage) {
+        this(metadataStore, null, storage, 0, 0, 0);
+    }
+
+    public DefaultMetadataServiceFactory(final CormorantConfiguration configuration) {
+        this(configuration, new FileSyncer(configuration.getDurability()));
+    }
+
+    public DefaultMetadataServiceFactory(final CormorantConfiguration configuration, final FileSyncer syncer) {
+        this(configuration.getMetadataStore(),
+                configuration.getObjectStore(),
+                configuration.getStorage(),
+                configuration.getConnectionPoolSize(),
+                configuration.getStatementCacheSize(),
+                configuration.getMetadataCacheSize(),
+                syncer);
+    }
+
+    public DefaultMetadataServiceFactory(
+                        final Path            metadataStore,
+                        final Path            objectStore,
+                        final MetadataStorage storage,
+                        final int             connectionPoolSize,
+                        final int             statementCacheSize,
+                        final int             cacheSize) {
+        this(metadataStore, objectStore, storage, connectionPoolSize, statementCacheSize, cacheSize, new FileSyncer(None));
+    }
+
+    public DefaultMetadataServiceFactory(
+                        final Path            metadataStore,
+                        final Path            objectStore,
+                        final MetadataStorage storage,
+                        final int             connectionPoolSize,
+                        final int             statementCacheSize,
+                        final int             cacheSize,
+                        final FileSyncer      syncer) {
         this.metadataStore = metadataStore;
+        this.objectStore = objectStore;
         this.storage = storage;
+        this.cacheSize = cacheSize;
+        this.syncer = syncer;
         final ServiceLoader<DataSourceFactory> dsServFactory = load(DataSourceFactory.class, getClass().getClassLoader());
         final Iterator<DataSourceFactory> dsServIterator = dsServFactory.iterator();
-        this.dsFactory = dsServIterator.hasNext() ? dsServIterator.next() : SQLite.equals(storage) ? new SQLiteDataSourceFactory(metadataStore) : null;
+        final DataSourceFactory dsFactory = dsServIterator.hasNext() ? dsServIterator.next() : SQLite.equals(storage) || SQLiteWAL.equals(storage) ?
+                                                        new SQLiteDataSourceFactory(metadataStore, SQLiteWAL.equals(storage)) : null;
+        if ( dsFactory != null && connectionPoolSize > 0 ) {
+            this.dsFactory = new PooledDataSourceFactory(dsFactory, connectionPoolSize, statementCacheSize);
+        } else {
+            this.dsFactory = dsFactory;
+        }
+        this.writer = this.dsFactory != null && SQLiteWAL.equals(storage) ? new JdbcMetadataWriter(this.dsFactory.get()) : null;
     }
 
     @Override
@@ -66,7 +127,7 @@ public class DefaultMetadataServiceFactory implements MetadataServiceFactory {
         final ServiceLoader<MetadataService> loader       = load(MetadataService.class, getClass().getClassLoader());
         final Iterator<MetadataService>      iterator     = loader.iterator();
         final Path                           absolutePath = metadataStore.toAbsolutePath().normalize().resolve(name);
-        if (File.equals(storage)) {
+        if (File.equals(storage) || Log.equals(storage)) {
             if ( ! exists(absolutePath, NOFOLLOW_LINKS) ) {
                 try {
                     createDirectories(absolutePath);
@@ -82,7 +143,14 @@ public class DefaultMetadataServiceFactory implements MetadataServiceFactory {
             metadataService = iterator.next();
         } else {
             if (File.equals(storage)) {
-                metadataService = new FileMetadataService(absolutePath, name);
+                metadataService = new FileMetadataService(absolutePath, name, syncer);
+            } else if (Log.equals(storage)) {
+                metadataService = new LogMetadataService(absolutePath, syncer);
+            } else if (Xattr.equals(storage)) {
+                if (objectStore == null) {
+                    throw new CormorantException("Object store is required for [" + storage + "] metadata storage.");
+                }
+                metadataService = new XattrMetadataService(objectStore, name);
             } else {
                 String schema = "";
                 String table  = "";
@@ -90,9 +158,13 @@ public class DefaultMetadataServiceFactory implements MetadataServiceFactory {
                     case ACCOUNT   : table = "ACCOUNT_META"   ; break;
                     case CONTAINER : table = "CONTAINER_META" ; break;
                     case OBJECT    : table = "OBJECT_META"    ; break;
-                    case OBJECT_SYS: table = "OBJECT_META_SYS"; break;
+                    case OBJECT_SYS: table = "OBJECT_CATALOG" ; break;
+                }
+                if (OBJECT_SYS.equals(name)) {
+                    metadataService = new JdbcObjectCatalog(dsFactory.get(), schema, table, "OBJECT_META_SYS", writer);
+                } else {
+                    metadataService = new JdbcMetadaService(dsFactory.get(), schema, table, writer);
                 }
-                metadataService = new JdbcMetadaService(dsFactory.get(), schema, table);
             }
         }
         try {
@@ -100,6 +172,24 @@ public class DefaultMetadataServiceFactory implements MetadataServiceFactory {
         } catch (SQLException e) {
             throw new CormorantException(e);
         }
+        if (cacheSize > 0) {
+            metadataService = new CachingMetadataService(metadataService, cacheSize);
+        }
         return metadataService;
     }
+
+    /**
+     * Stops the metadata writer after its queued mutations are committed and closes the connection pool,
+     * must be called after the metadata services are closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+        // the last connection to a WAL database checkpoints the log
+        if (dsFactory instanceof Closeable) {
+            ((Closeable) dsFactory).close();
+        }
+    }
 }
@@ -26,7 +26,6 @@ import static io.webfolder.cormorant.api.Json.object;
 import static io.webfolder.cormorant.api.metadata.MetadataServiceFactory.METADATA_EXTENSION;
 import static java.lang.String.valueOf;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.nio.file.Files.createDirectories;
 import static java.nio.file.Files.createTempFile;
 import static java.nio.file.Files.exists;
 import static java.nio.file.Files.isRegularFile;
@@ -47,6 +46,8 @@ import java.util.Set;
 
 import io.webfolder.cormorant.api.Json;
 import io.webfolder.cormorant.api.exception.CormorantException;
+import io.webfolder.cormorant.api.fs.Durability;
+import io.webfolder.cormorant.api.fs.FileSyncer;
 import io.webfolder.cormorant.api.service.MetadataService;
 
 public class FileMetadataService implements MetadataService {
@@ -61,11 +62,21 @@ public class FileMetadataService implements MetadataService {
 
     private final String groupName;
 
+    private final FileSyncer syncer;
+
     public FileMetadataService(
                 final Path   root,
                 final String cacheName) {
+        this(root, cacheName, new FileSyncer(Durability.None));
+    }
+
+    public FileMetadataService(
+                final Path       root,
+                final String     cacheName,
+                final FileSyncer syncer) {
         this.root      = root;
         this.groupName = cacheName.endsWith("-sys") ? SYSTEM_METADATA : METADATA;
+        this.syncer    = syncer;
     }
 
     @Override
@@ -165,6 +176,9 @@ public class FileMetadataService implements MetadataService {
             if ( value != null ) {
                 json.at(groupName)
                     .set(key, valueOf(value));
+            } else if (json.at(groupName).has(key)) {
+                json.at(groupName)
+                    .delAt(key);
             }
         }
         write(namespace, json);
@@ -200,13 +214,15 @@ public class FileMetadataService implements MetadataService {
         }
         final String str = json.toString();
         try {
-            final Path temp = createTempFile("cormorant", ".tmp");
-            Files.write(temp, str.getBytes(UTF_8));
             final Path dataFile = path.getParent().resolve(path.getFileName() + METADATA_EXTENSION);
             if ( ! exists(dataFile.getParent(), NOFOLLOW_LINKS) ) {
-                createDirectories(path.getParent());
+                syncer.createDirectories(path.getParent());
             }
+            // written next to the data file, the move is a rename on the same file system
+            final Path temp = createTempFile(dataFile.getParent(), "cormorant", ".tmp");
+            Files.write(temp, str.getBytes(UTF_8));
             move(temp, dataFile, ATOMIC_MOVE, NOFOLLOW_LINKS);
+            syncer.sync(dataFile);
         } catch (IOException e) {
             throw new CormorantException(e);
         }
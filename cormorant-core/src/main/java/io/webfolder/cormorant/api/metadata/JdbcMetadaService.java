@@ -22,17 +22,22 @@
  */
 package io.webfolder.cormorant.api.metadata;
 
+import static java.lang.Math.min;
 import static java.lang.String.valueOf;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.unmodifiableSet;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -42,34 +47,61 @@ import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.webfolder.cormorant.api.metadata.JdbcMetadataWriter.Operation;
 import io.webfolder.cormorant.api.service.MetadataService;
 
 public class JdbcMetadaService implements MetadataService {
 
-    private final DataSource ds;
+    private final DataSource         ds;
 
-    private final String     schema;
+    private final String             schema;
 
-    private final String     table;
+    private final String             table;
+
+    private final JdbcMetadataWriter writer;
+
+    private volatile boolean         upsert;
 
     private final Set<String> DECODES = unmodifiableSet(new HashSet<>(singletonList("X-Object-Manifest")));
 
-    private static final Logger LOG   = LoggerFactory.getLogger(JdbcMetadaService.class);
+    private static final int    MAX_BATCH_SIZE      = 500;
+
+    private static final String SQLITE              = "SQLite";
+
+    private static final String UNIQUE_INDEX_PREFIX = "UIDX_";
+
+    private static final String INDEX_PREFIX        = "IDX_";
+
+    private static final Logger LOG                 = LoggerFactory.getLogger(JdbcMetadaService.class);
 
     public JdbcMetadaService(
                 final DataSource ds,
                 final String     schema,
                 final String     table) {
+        this(ds, schema, table, null);
+    }
+
+    JdbcMetadaService(
+                final DataSource         ds,
+                final String             schema,
+                final String             table,
+                final JdbcMetadataWriter writer) {
         this.ds         = ds;
         this.schema     = schema;
         this.table      = table;
+        this.writer     = writer;
     }
 
     @Override
     public String get(final String namespace, final String key) throws SQLException {
+        try (Connection conn = ds.getConnection()) {
+            return get(conn, namespace, key);
+        }
+    }
+
+    protected String get(final Connection conn, final String namespace, final String key) throws SQLException {
         final String sql = "select VALUE from " + getSchemaKeyword() + table + " where NAMESPACE = ? and KEY = ?";
-        try (Connection conn = ds.getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, namespace);
             pstmt.setString(2, key);
             try (ResultSet rs = pstmt.executeQuery()) {
@@ -89,15 +121,16 @@ public class JdbcMetadaService implements MetadataService {
 
     @Override
     public void update(final String namespace, final String key, final String value) throws SQLException {
+        write(conn -> update(conn, namespace, key, value));
+    }
+
+    protected void update(final Connection conn, final String namespace, final String key, final String value) throws SQLException {
         if (value == null) {
-            if (contains(namespace, key)) {
-                delete(namespace, key);
-            }
+            delete(conn, namespace, key);
             return;
         }
         final String sql = "update " + getSchemaKeyword() + table + " set VALUE = ? where NAMESPACE = ? and KEY = ?";
-        try (Connection conn = ds.getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             String data = value;
             if (DECODES.contains(key)) {
                 data = data.replace("%2F", "/");
@@ -114,18 +147,16 @@ public class JdbcMetadaService implements MetadataService {
         if (value == null) {
             return;
         }
-        final String sql = "insert into " + getSchemaKeyword() + table + " (NAMESPACE, KEY, VALUE) VALUES (?, ?, ?)";
-        try (Connection conn = ds.getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            String data = value;
-            if (DECODES.contains(key)) {
-                data = data.replace("%2F", "/");
-            }
-            pstmt.setString(1, namespace);
-            pstmt.setString(2, key);
-            pstmt.setObject(3, data);
-            pstmt.executeUpdate();
-        }
+        write(conn -> add(conn, namespace, key, value));
+    }
+
+    /**
+     * Adding a key which already exists replaces its value, the (NAMESPACE, KEY) index is unique.
+     */
+    protected void add(final Connection conn, final String namespace, final String key, final String value) throws SQLException {
+        final Map<String, Object> values = new HashMap<>();
+        values.put(key, value);
+        setValues(conn, namespace, values);
     }
 
     @Override
@@ -146,24 +177,134 @@ public class JdbcMetadaService implements MetadataService {
         return values;
     }
 
+    @Override
+    public Map<String, Map<String, Object>> getValues(
+                                                final Collection<String> namespaces,
+                                                final Collection<String> keys) throws SQLException {
+        final Map<String, Map<String, Object>> values = new HashMap<>();
+        for (String namespace : namespaces) {
+            values.put(namespace, new HashMap<>());
+        }
+        if (values.isEmpty() || keys.isEmpty()) {
+            return values;
+        }
+        final List<String> distinctNamespaces = new ArrayList<>(values.keySet());
+        final List<String> distinctKeys       = new ArrayList<>(new HashSet<>(keys));
+        try (Connection conn = ds.getConnection()) {
+            for (int start = 0; start < distinctNamespaces.size(); start += MAX_BATCH_SIZE) {
+                final List<String> batch = distinctNamespaces.subList(start, min(start + MAX_BATCH_SIZE, distinctNamespaces.size()));
+                final String sql = "select NAMESPACE, KEY, VALUE from " + getSchemaKeyword() + table +
+                                        " where NAMESPACE in (" + getParameters(batch.size()) + ")" +
+                                        " and KEY in (" + getParameters(distinctKeys.size()) + ")";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    int index = 1;
+                    for (String namespace : batch) {
+                        pstmt.setString(index++, namespace);
+                    }
+                    for (String key : distinctKeys) {
+                        pstmt.setString(index++, key);
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            values.get(rs.getString("NAMESPACE"))
+                                    .put(rs.getString("KEY"), rs.getObject("VALUE"));
+                        }
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
     @Override
     public void setValues(final String namespace, final Map<String, Object> values) throws SQLException {
-        for (Entry<String, Object> next : values.entrySet()) {
-            final String key   = next.getKey();
-            final Object value = next.getValue();
-            if (get(namespace, key) == null) {
-                add(namespace, key, value != null ? valueOf(value) : null);
-            } else {
-                update(namespace, key, value != null ? valueOf(value) : null);
+        if (values.isEmpty()) {
+            return;
+        }
+        write(conn -> {
+            final boolean autoCommit = conn.getAutoCommit();
+            if (autoCommit) {
+                conn.setAutoCommit(false);
+            }
+            try {
+                setValues(conn, namespace, values);
+                if (autoCommit) {
+                    conn.commit();
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (autoCommit) {
+                    conn.rollback();
+                }
+                throw e;
+            } finally {
+                if (autoCommit) {
+                    conn.setAutoCommit(true);
+                }
             }
+        });
+    }
+
+    /**
+     * Applies all keys with two batched statements, a <code>null</code> value deletes the key.
+     * 
+     * SQLite upserts the values over the unique (NAMESPACE, KEY) index,
+     * other databases delete the keys before inserting the new values.
+     */
+    protected void setValues(final Connection conn, final String namespace, final Map<String, Object> values) throws SQLException {
+        final String deleteSql = "delete from " + getSchemaKeyword() + table + " where NAMESPACE = ? and KEY = ?";
+        final String insertSql = upsert ?
+                    "insert into " + getSchemaKeyword() + table + " (NAMESPACE, KEY, VALUE) VALUES (?, ?, ?)" +
+                                                " on conflict (NAMESPACE, KEY) do update set VALUE = excluded.VALUE" :
+                    "insert into " + getSchemaKeyword() + table + " (NAMESPACE, KEY, VALUE) VALUES (?, ?, ?)";
+        boolean inserts = false;
+        try (PreparedStatement pstmt = conn.prepareStatement(deleteSql)) {
+            boolean deletes = false;
+            for (Entry<String, Object> next : values.entrySet()) {
+                if ( upsert && next.getValue() != null ) {
+                    inserts = true;
+                    continue;
+                }
+                inserts |= next.getValue() != null;
+                pstmt.setString(1, namespace);
+                pstmt.setString(2, next.getKey());
+                pstmt.addBatch();
+                deletes = true;
+            }
+            if (deletes) {
+                pstmt.executeBatch();
+            }
+        }
+        if ( ! inserts ) {
+            return;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
+            for (Entry<String, Object> next : values.entrySet()) {
+                final String key   = next.getKey();
+                final Object value = next.getValue();
+                if (value == null) {
+                    continue;
+                }
+                String data = valueOf(value);
+                if (DECODES.contains(key)) {
+                    data = data.replace("%2F", "/");
+                }
+                pstmt.setString(1, namespace);
+                pstmt.setString(2, key);
+                pstmt.setObject(3, data);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
         }
     }
 
     @Override
     public void delete(final String namespace, final String key) throws SQLException {
+        write(conn -> delete(conn, namespace, key));
+    }
+
+    protected void delete(final Connection conn, final String namespace, final String key) throws SQLException {
         final String sql = "delete from " + getSchemaKeyword() + table + " where NAMESPACE = ? and KEY = ?";
-        try (Connection conn = ds.getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, namespace);
             pstmt.setString(2, key);
             pstmt.executeUpdate();
@@ -173,11 +314,45 @@ public class JdbcMetadaService implements MetadataService {
     @Override
     public void delete(final String namespace) throws SQLException {
         final String sql = "delete from " + getSchemaKeyword() + table + " where NAMESPACE = ?";
-        try (Connection conn = ds.getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, namespace);
-            pstmt.executeUpdate();
+        write(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, namespace);
+                pstmt.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Runs the mutation on the group commit writer if there is one, otherwise on its own connection.
+     */
+    protected void write(final Operation operation) throws SQLException {
+        if (writer != null) {
+            writer.execute(operation);
+        } else {
+            try (Connection conn = ds.getConnection()) {
+                operation.execute(conn);
+            }
+        }
+    }
+
+    protected DataSource getDataSource() {
+        return ds;
+    }
+
+    protected String getSchema() {
+        return schema;
+    }
+
+    protected String getTable() {
+        return table;
+    }
+
+    protected String getParameters(final int count) {
+        final StringBuilder builder = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            builder.append(i == 0 ? "?" : ",?");
         }
+        return builder.toString();
     }
 
     protected String getSchemaKeyword() {
@@ -190,19 +365,82 @@ public class JdbcMetadaService implements MetadataService {
                                     getSchemaKeyword() +
                                     table              +
                                     " (NAMESPACE VARCHAR(1024), KEY VARCHAR(1024), VALUE VARCHAR(4096))";
-        final String idxDDL   = "create index IDX_" + table + " on " + getSchemaKeyword() + table + "(NAMESPACE, KEY)";
-        LOG.info("Executing DDL: " + tableDDL);
-        LOG.info("Executing DDL: " + idxDDL  );
+        final String idxDDL   = "create unique index " + UNIQUE_INDEX_PREFIX + table + " on " + getSchemaKeyword() + table + "(NAMESPACE, KEY)";
+        final String oldDDL   = "create index " + INDEX_PREFIX + table + " on " + getSchemaKeyword() + table + "(NAMESPACE, KEY)";
         try (Connection conn = ds.getConnection()) {
-            ResultSet rs = conn.getMetaData().getTables(null, schema.isEmpty() ? null : schema, table, new String[] { "TABLE" });
+            final DatabaseMetaData metaData = conn.getMetaData();
+            final boolean sqlite = SQLITE.equalsIgnoreCase(metaData.getDatabaseProductName());
+            final boolean uniqueIndex;
+            ResultSet rs = metaData.getTables(null, schema.isEmpty() ? null : schema, table, new String[] { "TABLE" });
             if ( ! rs.next() ) {
+                LOG.info("Executing DDL: " + tableDDL);
                 try (Statement stmt = conn.createStatement()) {
                     stmt.execute(tableDDL);
                     LOG.info("Database table [{}] created.", new Object[] { getSchemaKeyword() + table });
-                    stmt.execute(idxDDL);
-                    LOG.info("Table index [{}] created.", new Object[] { "IDX_" + table });
                 }
+                uniqueIndex = createUniqueIndex(conn, idxDDL, false);
+                if (uniqueIndex) {
+                    LOG.info("Table index [{}] created.", new Object[] { UNIQUE_INDEX_PREFIX + table });
+                } else {
+                    // e.g. the key length limit of the database is lower than the key columns
+                    LOG.info("Executing DDL: " + oldDDL);
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute(oldDDL);
+                        LOG.info("Table index [{}] created.", new Object[] { INDEX_PREFIX + table });
+                    }
+                }
+            } else {
+                uniqueIndex = hasIndex(metaData, UNIQUE_INDEX_PREFIX + table, true) || createUniqueIndex(conn, idxDDL, sqlite);
+                if ( uniqueIndex && hasIndex(metaData, INDEX_PREFIX + table, false) ) {
+                    dropIndex(conn, INDEX_PREFIX + table);
+                }
+            }
+            upsert = sqlite && uniqueIndex;
+        }
+    }
+
+    protected boolean hasIndex(final DatabaseMetaData metaData, final String index, final boolean unique) throws SQLException {
+        try (ResultSet rs = metaData.getIndexInfo(null, schema.isEmpty() ? null : schema, table, unique, false)) {
+            while (rs.next()) {
+                final String name = rs.getString("INDEX_NAME");
+                if ( name != null && name.equalsIgnoreCase(index) ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the non-unique index of older versions, the unique index covers the same columns.
+     */
+    protected void dropIndex(final Connection conn, final String index) {
+        final String dropDDL = "drop index " + getSchemaKeyword() + index;
+        try (Statement stmt = conn.createStatement()) {
+            LOG.info("Executing DDL: " + dropDDL);
+            stmt.execute(dropDDL);
+        } catch (SQLException e) {
+            LOG.warn("Unable to drop index [" + index + "].", e);
+        }
+    }
+
+    /**
+     * Adds the unique index to a table created by an older version.
+     * Duplicate keys left behind by the old get then add sequence are removed first on SQLite, the latest row wins.
+     */
+    protected boolean createUniqueIndex(final Connection conn, final String idxDDL, final boolean sqlite) {
+        final String dedupe = "delete from " + getSchemaKeyword() + table + " where rowid not in " +
+                                    "(select max(rowid) from " + getSchemaKeyword() + table + " group by NAMESPACE, KEY)";
+        try (Statement stmt = conn.createStatement()) {
+            if (sqlite) {
+                stmt.execute(dedupe);
             }
+            LOG.info("Executing DDL: " + idxDDL);
+            stmt.execute(idxDDL);
+            return true;
+        } catch (SQLException e) {
+            LOG.warn("Unable to create unique index [" + UNIQUE_INDEX_PREFIX + table + "].", e);
+            return false;
         }
     }
 }
@@ -0,0 +1,193 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.metadata;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single writer thread which applies the mutations of many callers in one transaction.
+ * 
+ * Each mutation runs in its own savepoint, a failing mutation is rolled back
+ * without affecting the rest of the batch.
+ */
+class JdbcMetadataWriter implements Closeable {
+
+    private static final int MAX_BATCH_SIZE = 512;
+
+    private final DataSource ds;
+
+    private final BlockingQueue<Mutation> queue = new LinkedBlockingQueue<>();
+
+    private final Thread thread;
+
+    private final Object lock = new Object();
+
+    private volatile boolean running = true;
+
+    private final Logger log = LoggerFactory.getLogger(JdbcMetadataWriter.class);
+
+    @FunctionalInterface
+    interface Operation {
+
+        void execute(Connection conn) throws SQLException;
+    }
+
+    private static class Mutation {
+
+        private final Operation operation;
+
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        public Mutation(final Operation operation) {
+            this.operation = operation;
+        }
+    }
+
+    public JdbcMetadataWriter(final DataSource ds) {
+        this.ds     = ds;
+        this.thread = new Thread(this::run, "cormorant-metadata-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues the operation and waits until its transaction is committed.
+     */
+    public void execute(final Operation operation) throws SQLException {
+        final Mutation mutation = new Mutation(operation);
+        synchronized (lock) {
+            // nothing is queued once close() has started, the thread applies every mutation queued before
+            if ( ! running ) {
+                throw new SQLException("Metadata writer is closed.");
+            }
+            queue.add(mutation);
+        }
+        try {
+            mutation.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException(cause);
+        }
+    }
+
+    protected void run() {
+        final List<Mutation> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while ( running || ! queue.isEmpty() ) {
+            try {
+                final Mutation first = queue.poll(1, SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    protected void commit(final List<Mutation> batch) {
+        final List<Throwable> errors = new ArrayList<>(batch.size());
+        try (Connection conn = ds.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (Mutation next : batch) {
+                    final Savepoint savepoint = conn.setSavepoint();
+                    try {
+                        next.operation.execute(conn);
+                        errors.add(null);
+                    } catch (SQLException | RuntimeException e) {
+                        conn.rollback(savepoint);
+                        errors.add(e);
+                    }
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.error(e.getMessage(), e);
+            for (Mutation next : batch) {
+                next.result.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            final Throwable error = errors.get(i);
+            if (error == null) {
+                batch.get(i).result.complete(null);
+            } else {
+                batch.get(i).result.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * Applies the queued mutations and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            running = false;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Mutation next;
+        while ((next = queue.poll()) != null) {
+            next.result.completeExceptionally(new SQLException("Metadata writer is closed."));
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.metadata;
+
+import static java.lang.Math.min;
+import static java.lang.String.valueOf;
+import static java.util.Collections.unmodifiableMap;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Object system metadata stored as one row per object.
+ * 
+ * Each supported key has its own column, so all system metadata of an object
+ * is read with a single primary key lookup. Other keys are stored in the legacy
+ * key/value table, which is kept as the fallback of the catalog.
+ * Rows of the legacy key/value table are copied into the catalog when the catalog table is created.
+ */
+public class JdbcObjectCatalog extends JdbcMetadaService {
+
+    private static final Map<String, String> COLUMNS;
+
+    static {
+        final Map<String, String> columns = new LinkedHashMap<>();
+        columns.put("Content-Type"       , "CONTENT_TYPE"       );
+        columns.put("Content-Encoding"   , "CONTENT_ENCODING"   );
+        columns.put("Content-Disposition", "CONTENT_DISPOSITION");
+        columns.put("Transfer-Encoding"  , "TRANSFER_ENCODING"  );
+        columns.put("X-Delete-At"        , "DELETE_AT"          );
+        columns.put("X-Delete-After"     , "DELETE_AFTER"       );
+        columns.put("X-Object-Manifest"  , "OBJECT_MANIFEST"    );
+        columns.put("X-Cormorant-Deleted", "DELETED"            );
+        COLUMNS = unmodifiableMap(columns);
+    }
+
+    private static final String X_OBJECT_MANIFEST = "X-Object-Manifest";
+
+    private static final int    MAX_BATCH_SIZE    = 500;
+
+    private static final String SQLITE            = "SQLite";
+
+    private static final Logger LOG               = LoggerFactory.getLogger(JdbcObjectCatalog.class);
+
+    private final String legacyTable;
+
+    private final JdbcMetadaService keyValues;
+
+    private volatile boolean upsert;
+
+    /**
+     * @param legacyTable key/value table of the older versions, keys without a column are stored in it,
+     *                    if <code>null</code> they are stored in <code>table_EXT</code>
+     */
+    public JdbcObjectCatalog(
+                final DataSource ds,
+                final String     schema,
+                final String     table,
+                final String     legacyTable) {
+        this(ds, schema, table, legacyTable, null);
+    }
+
+    JdbcObjectCatalog(
+                final DataSource         ds,
+                final String             schema,
+                final String             table,
+                final String             legacyTable,
+                final JdbcMetadataWriter writer) {
+        super(ds, schema, table, writer);
+        this.legacyTable = legacyTable;
+        this.keyValues   = new JdbcMetadaService(ds, schema, legacyTable != null ? legacyTable : table + "_EXT", writer);
+    }
+
+    @Override
+    protected String get(final Connection conn, final String namespace, final String key) throws SQLException {
+        final String column = COLUMNS.get(key);
+        if (column == null) {
+            return keyValues.get(conn, namespace, key);
+        }
+        final String sql = "select " + column + " from " + getSchemaKeyword() + getTable() + " where NAMESPACE = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, namespace);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    @Override
+    protected void update(final Connection conn, final String namespace, final String key, final String value) throws SQLException {
+        final Map<String, Object> values = new HashMap<>();
+        values.put(key, value);
+        setValues(conn, namespace, values);
+    }
+
+    @Override
+    protected void add(final Connection conn, final String namespace, final String key, final String value) throws SQLException {
+        update(conn, namespace, key, value);
+    }
+
+    @Override
+    protected void delete(final Connection conn, final String namespace, final String key) throws SQLException {
+        update(conn, namespace, key, null);
+    }
+
+    @Override
+    public Map<String, Object> getValues(final String namespace) throws SQLException {
+        final Map<String, Object> values = keyValues.getValues(namespace);
+        // rows of the legacy table for keys with a column are stale after the migration
+        values.keySet().removeAll(COLUMNS.keySet());
+        final String sql = "select " + String.join(", ", COLUMNS.values()) + " from " +
+                                getSchemaKeyword() + getTable() + " where NAMESPACE = ?";
+        try (Connection conn = getDataSource().getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, namespace);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    values.putAll(toMap(rs, COLUMNS.keySet()));
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> getValues(
+                                                final Collection<String> namespaces,
+                                                final Collection<String> keys) throws SQLException {
+        final Map<String, Map<String, Object>> values = new HashMap<>();
+        for (String namespace : namespaces) {
+            values.put(namespace, new HashMap<>());
+        }
+        if (values.isEmpty()) {
+            return values;
+        }
+        final Set<String> otherKeys = new LinkedHashSet<>(keys);
+        otherKeys.removeAll(COLUMNS.keySet());
+        if ( ! otherKeys.isEmpty() ) {
+            for (Entry<String, Map<String, Object>> next : keyValues.getValues(values.keySet(), otherKeys).entrySet()) {
+                values.get(next.getKey()).putAll(next.getValue());
+            }
+        }
+        final Set<String> supportedKeys = new LinkedHashSet<>(keys);
+        supportedKeys.retainAll(COLUMNS.keySet());
+        if (supportedKeys.isEmpty()) {
+            return values;
+        }
+        final List<String> columns = new ArrayList<>(supportedKeys.size());
+        for (String key : supportedKeys) {
+            columns.add(COLUMNS.get(key));
+        }
+        final List<String> distinctNamespaces = new ArrayList<>(values.keySet());
+        try (Connection conn = getDataSource().getConnection()) {
+            for (int start = 0; start < distinctNamespaces.size(); start += MAX_BATCH_SIZE) {
+                final List<String> batch = distinctNamespaces.subList(start, min(start + MAX_BATCH_SIZE, distinctNamespaces.size()));
+                final String sql = "select NAMESPACE, " + String.join(", ", columns) + " from " + getSchemaKeyword() + getTable() +
+                                        " where NAMESPACE in (" + getParameters(batch.size()) + ")";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    int index = 1;
+                    for (String namespace : batch) {
+                        pstmt.setString(index++, namespace);
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            values.get(rs.getString("NAMESPACE")).putAll(toMap(rs, supportedKeys));
+                        }
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Writes the given columns of the object row with a single statement, a <code>null</code> value clears the column.
+     * Keys without a column are written to the key/value table on the same connection.
+     * 
+     * SQLite upserts the row over the primary key, other databases insert the row if the update did not match it.
+     */
+    @Override
+    protected void setValues(final Connection conn, final String namespace, final Map<String, Object> values) throws SQLException {
+        final List<String>        columns = new ArrayList<>(values.size());
+        final List<String>        data    = new ArrayList<>(values.size());
+        final Map<String, Object> others  = new HashMap<>();
+        for (Entry<String, Object> next : values.entrySet()) {
+            final String column = COLUMNS.get(next.getKey());
+            if (column == null) {
+                others.put(next.getKey(), next.getValue());
+                continue;
+            }
+            String value = next.getValue() == null ? null : valueOf(next.getValue());
+            if ( value != null && X_OBJECT_MANIFEST.equals(next.getKey()) ) {
+                value = value.replace("%2F", "/");
+            }
+            columns.add(column);
+            data.add(value);
+        }
+        if ( ! others.isEmpty() ) {
+            keyValues.setValues(conn, namespace, others);
+        }
+        if (columns.isEmpty()) {
+            return;
+        }
+        final StringBuilder assignments = new StringBuilder();
+        for (String column : columns) {
+            assignments.append(assignments.length() == 0 ? "" : ", ")
+                       .append(column)
+                       .append(upsert ? " = excluded." + column : " = ?");
+        }
+        final String insertSql = "insert into " + getSchemaKeyword() + getTable() +
+                                        " (NAMESPACE, " + String.join(", ", columns) + ") values (?, " + getParameters(columns.size()) + ")";
+        if (upsert) {
+            try (PreparedStatement pstmt = conn.prepareStatement(insertSql + " on conflict (NAMESPACE) do update set " + assignments)) {
+                setParameters(pstmt, namespace, data);
+                pstmt.executeUpdate();
+            }
+            return;
+        }
+        final String updateSql = "update " + getSchemaKeyword() + getTable() + " set " + assignments + " where NAMESPACE = ?";
+        final int updated;
+        try (PreparedStatement pstmt = conn.prepareStatement(updateSql)) {
+            int index = 1;
+            for (String value : data) {
+                pstmt.setString(index++, value);
+            }
+            pstmt.setString(index, namespace);
+            updated = pstmt.executeUpdate();
+        }
+        if ( updated == 0 ) {
+            try (PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
+                setParameters(pstmt, namespace, data);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    @Override
+    public void delete(final String namespace) throws SQLException {
+        super.delete(namespace);
+        keyValues.delete(namespace);
+    }
+
+    protected void setParameters(final PreparedStatement pstmt, final String namespace, final List<String> data) throws SQLException {
+        int index = 1;
+        pstmt.setString(index++, namespace);
+        for (String value : data) {
+            pstmt.setString(index++, value);
+        }
+    }
+
+    protected Map<String, Object> toMap(final ResultSet rs, final Collection<String> keys) throws SQLException {
+        final Map<String, Object> values = new HashMap<>();
+        for (String key : keys) {
+            final String value = rs.getString(COLUMNS.get(key));
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void init() throws SQLException {
+        final StringBuilder tableDDL = new StringBuilder("create table ")
+                                                .append(getSchemaKeyword())
+                                                .append(getTable())
+                                                .append(" (NAMESPACE VARCHAR(1024) PRIMARY KEY");
+        for (String column : COLUMNS.values()) {
+            tableDDL.append(", ").append(column).append(" VARCHAR(4096)");
+        }
+        tableDDL.append(")");
+        try (Connection conn = getDataSource().getConnection()) {
+            final DatabaseMetaData metaData = conn.getMetaData();
+            upsert = SQLITE.equalsIgnoreCase(metaData.getDatabaseProductName());
+            if ( ! exists(metaData, getTable()) ) {
+                LOG.info("Executing DDL: " + tableDDL);
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(tableDDL.toString());
+                }
+                LOG.info("Database table [{}] created.", new Object[] { getSchemaKeyword() + getTable() });
+                if ( legacyTable != null && exists(metaData, legacyTable) ) {
+                    migrate(conn);
+                }
+            }
+        }
+        keyValues.init();
+    }
+
+    protected boolean exists(final DatabaseMetaData metaData, final String name) throws SQLException {
+        try (ResultSet rs = metaData.getTables(null, getSchema().isEmpty() ? null : getSchema(), name, new String[] { "TABLE" })) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Pivots the key/value rows of the legacy table into catalog rows, the legacy table is left untouched
+     * and keeps serving the keys without a column.
+     */
+    protected void migrate(final Connection conn) throws SQLException {
+        final StringBuilder columns = new StringBuilder();
+        final StringBuilder values  = new StringBuilder();
+        for (Entry<String, String> next : COLUMNS.entrySet()) {
+            columns.append(", ").append(next.getValue());
+            values.append(", max(case when KEY = '").append(next.getKey()).append("' then VALUE end)");
+        }
+        final String sql = "insert into " + getSchemaKeyword() + getTable() + " (NAMESPACE" + columns + ")" +
+                                " select NAMESPACE" + values + " from " + getSchemaKeyword() + legacyTable + " group by NAMESPACE";
+        try (Statement stmt = conn.createStatement()) {
+            final int count = stmt.executeUpdate(sql);
+            LOG.info("Copied [{}] objects from [{}] into [{}].", new Object[] { count, legacyTable, getTable() });
+        }
+    }
+}
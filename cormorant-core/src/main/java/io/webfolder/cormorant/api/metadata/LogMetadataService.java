@@ -0,0 +1,504 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.metadata;
+
+import static io.webfolder.cormorant.api.fs.Durability.None;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.channels.FileChannel.open;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.move;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.webfolder.cormorant.api.exception.CormorantException;
+import io.webfolder.cormorant.api.fs.FileSyncer;
+import io.webfolder.cormorant.api.service.MetadataService;
+
+/**
+ * Log structured metadata store.
+ * 
+ * Each write appends the new state of a namespace to a memory mapped log,
+ * the in-memory index maps a namespace to its latest record.
+ * The log is replayed on startup, replay stops at the first incomplete or corrupt record.
+ * Superseded records are removed by a background compaction which rewrites the live records into a new log.
+ * Unless the durability mode is {@link io.webfolder.cormorant.api.fs.Durability#None} a write returns
+ * once the mapped log is forced, writers which wait at the same time share a single force.
+ * 
+ * <pre>
+ * log    : magic (int) record*
+ * record : length (int) crc32 (int) payload
+ * payload: type (byte) namespace (utf) count (int) [key (utf) value (utf)]*
+ * </pre>
+ */
+public class LogMetadataService implements MetadataService, Closeable {
+
+    private static final String LOG_FILE            = "metadata.log";
+
+    private static final String COMPACT_FILE        = "metadata.log.compact";
+
+    private static final int    MAGIC               = 0x434d4c31; // CML1
+
+    private static final int    HEADER_SIZE         = 4;
+
+    private static final int    RECORD_HEADER_SIZE  = 8;
+
+    private static final byte   VALUES              = 1;
+
+    private static final byte   DELETE              = 2;
+
+    private static final int    INITIAL_CAPACITY    = 16 * 1024 * 1024;
+
+    private static final long   MAX_CAPACITY        = Integer.MAX_VALUE;
+
+    private static final long   COMPACT_INTERVAL    = 60;
+
+    private static final long   COMPACT_MIN_GARBAGE = 4 * 1024 * 1024;
+
+    private final Path directory;
+
+    private final Map<String, Integer> index = new ConcurrentHashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final ScheduledExecutorService compactor;
+
+    private final FileSyncer syncer;
+
+    private final Object forceLock = new Object();
+
+    private final Logger log = LoggerFactory.getLogger(LogMetadataService.class);
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    private int end;
+
+    private long liveBytes;
+
+    private volatile int forced;
+
+    public LogMetadataService(final Path directory) {
+        this(directory, new FileSyncer(None));
+    }
+
+    public LogMetadataService(final Path directory, final FileSyncer syncer) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.syncer    = syncer;
+        this.compactor = newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cormorant-metadata-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void init() {
+        lock.writeLock().lock();
+        try {
+            createDirectories(directory);
+            // a compaction which did not complete is discarded, the log is still intact
+            deleteIfExists(directory.resolve(COMPACT_FILE));
+            map(directory.resolve(LOG_FILE));
+            replay();
+        } catch (IOException e) {
+            throw new CormorantException("Unable to open metadata log [" + directory + "].", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        compactor.scheduleWithFixedDelay(this::compactIfRequired, COMPACT_INTERVAL, COMPACT_INTERVAL, SECONDS);
+    }
+
+    @Override
+    public String get(final String namespace, final String key) {
+        final Object value = read(namespace).get(key);
+        return value == null ? null : String.valueOf(value);
+    }
+
+    @Override
+    public boolean contains(final String namespace, final String key) {
+        return read(namespace).get(key) != null;
+    }
+
+    @Override
+    public void update(final String namespace, final String key, final String value) {
+        final Map<String, Object> values = new HashMap<>();
+        values.put(key, value);
+        setValues(namespace, values);
+    }
+
+    @Override
+    public void add(final String namespace, final String key, final String value) {
+        if (value == null) {
+            return;
+        }
+        update(namespace, key, value);
+    }
+
+    @Override
+    public Map<String, Object> getValues(final String namespace) {
+        return read(namespace);
+    }
+
+    @Override
+    public void setValues(final String namespace, final Map<String, Object> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        final int position;
+        lock.writeLock().lock();
+        try {
+            final Map<String, Object> current = read(namespace);
+            for (Entry<String, Object> next : values.entrySet()) {
+                if (next.getValue() == null) {
+                    current.remove(next.getKey());
+                } else {
+                    current.put(next.getKey(), String.valueOf(next.getValue()));
+                }
+            }
+            if (current.isEmpty()) {
+                if (index.containsKey(namespace)) {
+                    append(DELETE, namespace, current);
+                }
+            } else {
+                append(VALUES, namespace, current);
+            }
+            position = end;
+        } catch (IOException e) {
+            throw new CormorantException("Unable to write metadata [" + namespace + "].", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        force(position);
+    }
+
+    @Override
+    public void delete(final String namespace, final String key) {
+        update(namespace, key, null);
+    }
+
+    @Override
+    public void delete(final String namespace) {
+        final int position;
+        lock.writeLock().lock();
+        try {
+            if (index.containsKey(namespace)) {
+                append(DELETE, namespace, new HashMap<>());
+            }
+            position = end;
+        } catch (IOException e) {
+            throw new CormorantException("Unable to delete metadata [" + namespace + "].", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        force(position);
+    }
+
+    /**
+     * Forces the log up to <code>position</code> according to the durability mode.
+     * The first waiting writer forces every record appended so far, the others return without a force.
+     */
+    protected void force(final int position) {
+        if (None.equals(syncer.getDurability())) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (forced >= position) {
+                return;
+            }
+            lock.readLock().lock();
+            try {
+                if (channel == null) {
+                    throw new CormorantException("Metadata log [" + directory + "] is closed.");
+                }
+                final int target = end;
+                buffer.force();
+                forced = target;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    protected Map<String, Object> read(final String namespace) {
+        lock.readLock().lock();
+        try {
+            final Integer offset = index.get(namespace);
+            if (offset == null) {
+                return new HashMap<>();
+            }
+            return decode(payload(buffer, offset)).values;
+        } catch (IOException e) {
+            throw new CormorantException("Unable to read metadata [" + namespace + "].", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    protected void append(final byte type, final String namespace, final Map<String, Object> values) throws IOException {
+        final byte[] payload = encode(type, namespace, values);
+        final int    size    = RECORD_HEADER_SIZE + payload.length;
+        ensureCapacity(size);
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        final MappedByteBuffer target = buffer;
+        target.position(end);
+        target.putInt(payload.length);
+        target.putInt((int) crc.getValue());
+        target.put(payload);
+        release(namespace);
+        if (type == VALUES) {
+            index.put(namespace, end);
+            liveBytes += size;
+        }
+        end += size;
+    }
+
+    protected void release(final String namespace) {
+        final Integer previous = index.remove(namespace);
+        if (previous != null) {
+            liveBytes -= RECORD_HEADER_SIZE + buffer.getInt(previous);
+        }
+    }
+
+    protected void ensureCapacity(final int size) throws IOException {
+        final long required = (long) end + size;
+        if (required <= buffer.capacity()) {
+            return;
+        }
+        if (required > MAX_CAPACITY) {
+            throw new IOException("Metadata log is full.");
+        }
+        long capacity = buffer.capacity();
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        buffer.force();
+        buffer = channel.map(READ_WRITE, 0, Math.min(capacity, MAX_CAPACITY));
+    }
+
+    protected void map(final Path file) throws IOException {
+        channel = open(file, CREATE, READ, WRITE);
+        final long size = channel.size();
+        buffer = channel.map(READ_WRITE, 0, Math.max(size, INITIAL_CAPACITY));
+        if (size == 0) {
+            buffer.putInt(0, MAGIC);
+        } else if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Invalid metadata log [" + file + "].");
+        }
+    }
+
+    /**
+     * Rebuilds the index from the log and truncates it after the last valid record.
+     */
+    protected void replay() throws IOException {
+        index.clear();
+        liveBytes = 0;
+        int position = HEADER_SIZE;
+        int records  = 0;
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            final int length = buffer.getInt(position);
+            if ( length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.capacity() ) {
+                break;
+            }
+            final byte[] payload = payload(buffer, position);
+            final CRC32 crc = new CRC32();
+            crc.update(payload, 0, payload.length);
+            if ( (int) crc.getValue() != buffer.getInt(position + 4) ) {
+                log.warn("Corrupt record at [{}] in metadata log [{}], discarding the rest of the log.", position, directory);
+                break;
+            }
+            final Record record = decode(payload);
+            release(record.namespace);
+            if (record.type == VALUES) {
+                index.put(record.namespace, position);
+                liveBytes += RECORD_HEADER_SIZE + length;
+            }
+            position += RECORD_HEADER_SIZE + length;
+            records  += 1;
+        }
+        end = position;
+        // clear the tail so that a partially written record is never read back
+        for (int i = end; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+        log.info("Metadata log [{}] replayed, records: {}, namespaces: {}.", directory, records, index.size());
+    }
+
+    protected void compactIfRequired() {
+        try {
+            final long garbage;
+            lock.readLock().lock();
+            try {
+                garbage = end - HEADER_SIZE - liveBytes;
+            } finally {
+                lock.readLock().unlock();
+            }
+            if ( garbage > COMPACT_MIN_GARBAGE && garbage > liveBytes ) {
+                compact();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Unable to compact metadata log [" + directory + "].", e);
+        }
+    }
+
+    /**
+     * Copies the live records into a new log and replaces the current log with it.
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            final Path compactFile = directory.resolve(COMPACT_FILE);
+            final Path logFile     = directory.resolve(LOG_FILE);
+            final long capacity    = Math.max(INITIAL_CAPACITY, Long.highestOneBit(liveBytes + HEADER_SIZE) * 2);
+            final Map<String, Integer> offsets = new HashMap<>();
+            int position = HEADER_SIZE;
+            try (FileChannel target = open(compactFile, CREATE, READ, WRITE)) {
+                final MappedByteBuffer compacted = target.map(READ_WRITE, 0, capacity);
+                compacted.putInt(0, MAGIC);
+                compacted.position(HEADER_SIZE);
+                for (Entry<String, Integer> next : index.entrySet()) {
+                    final int offset = next.getValue();
+                    final int size   = RECORD_HEADER_SIZE + buffer.getInt(offset);
+                    final ByteBuffer record = buffer.duplicate();
+                    record.position(offset).limit(offset + size);
+                    compacted.put(record);
+                    offsets.put(next.getKey(), position);
+                    position += size;
+                }
+                compacted.force();
+            }
+            channel.close();
+            move(compactFile, logFile, ATOMIC_MOVE, REPLACE_EXISTING);
+            syncer.sync(logFile);
+            map(logFile);
+            index.putAll(offsets);
+            end = position;
+            forced = position;
+            log.info("Metadata log [{}] compacted, namespaces: {}.", directory, index.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdownNow();
+        lock.writeLock().lock();
+        try {
+            if (channel != null) {
+                buffer.force();
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    protected byte[] payload(final MappedByteBuffer source, final int offset) {
+        final int length = source.getInt(offset);
+        final byte[] payload = new byte[length];
+        final ByteBuffer view = source.duplicate();
+        view.position(offset + RECORD_HEADER_SIZE);
+        view.get(payload);
+        return payload;
+    }
+
+    protected byte[] encode(final byte type, final String namespace, final Map<String, Object> values) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+        try (DataOutputStream os = new DataOutputStream(bos)) {
+            os.writeByte(type);
+            os.writeUTF(namespace);
+            os.writeInt(values.size());
+            for (Entry<String, Object> next : values.entrySet()) {
+                os.writeUTF(next.getKey());
+                os.writeUTF(String.valueOf(next.getValue()));
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    protected Record decode(final byte[] payload) throws IOException {
+        try (DataInputStream is = new DataInputStream(new ByteArrayInputStream(payload))) {
+            final byte   type      = is.readByte();
+            final String namespace = is.readUTF();
+            final int    count     = is.readInt();
+            final Map<String, Object> values = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                values.put(is.readUTF(), is.readUTF());
+            }
+            return new Record(type, namespace, values);
+        }
+    }
+
+    private static class Record {
+
+        private final byte type;
+
+        private final String namespace;
+
+        private final Map<String, Object> values;
+
+        public Record(final byte type, final String namespace, final Map<String, Object> values) {
+            this.type      = type;
+            this.namespace = namespace;
+            this.values    = values;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LogMetadataService [directory=" + directory + ", namespaces=" + index.size() + ", size=" + end + "]";
+    }
+}
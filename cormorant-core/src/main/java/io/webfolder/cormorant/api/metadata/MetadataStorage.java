@@ -24,5 +24,17 @@ package io.webfolder.cormorant.api.metadata;
 
 public enum MetadataStorage {
     File,
-    SQLite
+    SQLite,
+    /**
+     * SQLite in WAL mode, writes are committed in batches by a single writer thread.
+     */
+    SQLiteWAL,
+    /**
+     * User defined extended attributes of the object files.
+     */
+    Xattr,
+    /**
+     * Append only memory mapped log with an in-memory index, compacted in the background.
+     */
+    Log
 }
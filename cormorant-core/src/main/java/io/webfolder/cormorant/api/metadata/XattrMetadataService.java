@@ -0,0 +1,275 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.metadata;
+
+import static io.webfolder.cormorant.api.metadata.CacheNames.ACCOUNT;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.getFileAttributeView;
+import static java.nio.file.Files.getFileStore;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableSet;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import io.webfolder.cormorant.api.exception.CormorantException;
+import io.webfolder.cormorant.api.service.MetadataService;
+
+/**
+ * Stores metadata as user defined extended attributes of the object file.
+ * 
+ * Account metadata is stored on the object store directory, container metadata on the
+ * container directory and object metadata on the object itself. Metadata is removed
+ * together with the file, there is no separate store to keep consistent.
+ * 
+ * ext4 keeps all extended attributes of a file in a single block, the total size of the
+ * attributes is limited to {@link #MAX_ATTRIBUTES_SIZE} and larger metadata is rejected
+ * with 400 instead of failing on write.
+ */
+public class XattrMetadataService implements MetadataService {
+
+    private static final String METADATA_PREFIX        = "cormorant.meta.";
+
+    private static final String SYSTEM_METADATA_PREFIX = "cormorant.sys." ;
+
+    /**
+     * Usable size of a 4 KiB ext4 attribute block, the block header and the end marker excluded.
+     */
+    public static final int     MAX_ATTRIBUTES_SIZE    = 4096 - 32 - 4  ;
+
+    // ext4 entry header
+    private static final int    ENTRY_SIZE             = 16             ;
+
+    // room left for the etag attribute of the object service
+    private static final int    RESERVED_SIZE          = 64             ;
+
+    private final Set<String> DECODES                  = unmodifiableSet(new HashSet<>(asList("X-Object-Manifest")));
+
+    private final Path root;
+
+    private final String prefix;
+
+    private final boolean account;
+
+    public XattrMetadataService(
+                final Path   root,
+                final String cacheName) {
+        this.root    = root.toAbsolutePath().normalize();
+        this.prefix  = cacheName.endsWith("-sys") ? SYSTEM_METADATA_PREFIX : METADATA_PREFIX;
+        this.account = ACCOUNT.equals(cacheName);
+    }
+
+    @Override
+    public void init() {
+        try {
+            if ( ! getFileStore(root).supportsFileAttributeView(UserDefinedFileAttributeView.class) ) {
+                throw new CormorantException("File store of [" + root + "] does not support user defined file attributes.");
+            }
+        } catch (IOException e) {
+            throw new CormorantException(e);
+        }
+    }
+
+    @Override
+    public String get(final String namespace, final String key) {
+        return read(getView(namespace), prefix + key);
+    }
+
+    @Override
+    public boolean contains(final String namespace, final String key) {
+        return get(namespace, key) != null;
+    }
+
+    @Override
+    public void update(final String namespace, final String key, final String value) {
+        if (value == null) {
+            delete(namespace, key);
+            return;
+        }
+        add(namespace, key, value);
+    }
+
+    @Override
+    public void add(final String namespace, final String key, final String value) {
+        if (value == null) {
+            return;
+        }
+        final Map<String, Object> values = new HashMap<>();
+        values.put(key, value);
+        setValues(namespace, values);
+    }
+
+    @Override
+    public Map<String, Object> getValues(final String namespace) {
+        final Map<String, Object> values = new HashMap<>();
+        final UserDefinedFileAttributeView view = getView(namespace);
+        try {
+            for (String name : view.list()) {
+                if (name.startsWith(prefix)) {
+                    final String value = read(view, name);
+                    if (value != null) {
+                        values.put(name.substring(prefix.length()), value);
+                    }
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // object is deleted
+        } catch (IOException e) {
+            throw new CormorantException("Unable to read metadata of [" + namespace + "].", e);
+        }
+        return values;
+    }
+
+    @Override
+    public void setValues(final String namespace, final Map<String, Object> values) {
+        final UserDefinedFileAttributeView view = getView(namespace);
+        try {
+            final Map<String, ByteBuffer> attributes = new HashMap<>();
+            for (Entry<String, Object> next : values.entrySet()) {
+                final String key   = next.getKey();
+                final Object value = next.getValue();
+                if (value != null) {
+                    String data = String.valueOf(value);
+                    if (DECODES.contains(key)) {
+                        data = data.replace("%2F", "/");
+                    }
+                    attributes.put(prefix + key, UTF_8.encode(data));
+                }
+            }
+            checkSize(view, values.keySet(), attributes);
+            for (Entry<String, Object> next : values.entrySet()) {
+                final String     name = prefix + next.getKey();
+                final ByteBuffer data = attributes.get(name);
+                if (data == null) {
+                    remove(view, name);
+                } else {
+                    view.write(name, data);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            throw new CormorantException("Unable to write metadata. Object [" + namespace + "] does not exist.", e);
+        } catch (IOException e) {
+            throw new CormorantException("Unable to write metadata of [" + namespace + "].", e);
+        }
+    }
+
+    @Override
+    public void delete(final String namespace, final String key) {
+        try {
+            remove(getView(namespace), prefix + key);
+        } catch (IOException e) {
+            throw new CormorantException("Unable to delete metadata of [" + namespace + "].", e);
+        }
+    }
+
+    @Override
+    public void delete(final String namespace) {
+        final UserDefinedFileAttributeView view = getView(namespace);
+        try {
+            for (String name : view.list()) {
+                if (name.startsWith(prefix)) {
+                    remove(view, name);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // object is deleted
+        } catch (IOException e) {
+            throw new CormorantException("Unable to delete metadata of [" + namespace + "].", e);
+        }
+    }
+
+    /**
+     * Rejects the change if the attributes of the file would not fit into {@link #MAX_ATTRIBUTES_SIZE}.
+     *
+     * @param keys keys which are written or removed
+     * @param attributes new attribute values by attribute name
+     */
+    protected void checkSize(
+                    final UserDefinedFileAttributeView view,
+                    final Set<String>                  keys,
+                    final Map<String, ByteBuffer>      attributes) throws IOException {
+        int size = RESERVED_SIZE;
+        for (String name : view.list()) {
+            final boolean replaced = name.startsWith(prefix) && keys.contains(name.substring(prefix.length()));
+            if ( ! replaced ) {
+                size += getEntrySize(name, view.size(name));
+            }
+        }
+        for (Entry<String, ByteBuffer> next : attributes.entrySet()) {
+            size += getEntrySize(next.getKey(), next.getValue().remaining());
+        }
+        if (size > MAX_ATTRIBUTES_SIZE) {
+            throw new CormorantException("Metadata is too large. Total size of the attributes ["
+                                                + size + "] exceeds [" + MAX_ATTRIBUTES_SIZE + "] bytes.", BAD_REQUEST);
+        }
+    }
+
+    protected int getEntrySize(final String name, final int valueSize) {
+        return ENTRY_SIZE + align(name.getBytes(UTF_8).length) + align(valueSize);
+    }
+
+    private static int align(final int size) {
+        return (size + 3) & ~3;
+    }
+
+    protected String read(final UserDefinedFileAttributeView view, final String name) {
+        try {
+            final ByteBuffer buffer = ByteBuffer.allocate(view.size(name));
+            view.read(name, buffer);
+            buffer.flip();
+            return UTF_8.decode(buffer).toString();
+        } catch (FileSystemException e) {
+            // attribute or object does not exist
+            return null;
+        } catch (IOException e) {
+            throw new CormorantException(e);
+        }
+    }
+
+    protected void remove(final UserDefinedFileAttributeView view, final String name) throws IOException {
+        try {
+            view.delete(name);
+        } catch (FileSystemException e) {
+            // attribute or object does not exist
+        }
+    }
+
+    protected UserDefinedFileAttributeView getView(final String namespace) {
+        final Path path = account ? root : root.resolve(namespace).toAbsolutePath().normalize();
+        if ( ! path.startsWith(root) ) {
+            throw new CormorantException("Invalid metadata path ["+ path.toString() + "].");
+        }
+        return getFileAttributeView(path, UserDefinedFileAttributeView.class, NOFOLLOW_LINKS);
+    }
+}
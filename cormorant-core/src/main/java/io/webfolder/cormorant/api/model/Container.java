@@ -77,10 +77,35 @@ public class Container implements Comparable<Container> {
         return bytesUsed.addAndGet(delta);
     }
 
+    /**
+     * Adds <code>delta</code> unless the result exceeds <code>maxBytesUsed</code>, a negative delta is always added.
+     * 
+     * @return <code>false</code> if the bytes used are left unchanged
+     */
+    public boolean addBytesUsed(final long delta, final long maxBytesUsed) {
+        while (true) {
+            final long current = bytesUsed.get();
+            if ( delta > 0 && current + delta > maxBytesUsed ) {
+                return false;
+            }
+            if (bytesUsed.compareAndSet(current, current + delta)) {
+                return true;
+            }
+        }
+    }
+
     public Long removeBytesUsed(final long delta) {
         return bytesUsed.updateAndGet(value -> value - delta);
     }
 
+    public void setObjectCount(final long objectCount) {
+        this.objectCount.set(objectCount);
+    }
+
+    public void setBytesUsed(final long bytesUsed) {
+        this.bytesUsed.set(bytesUsed);
+    }
+
     public Long decrementObjectCount() {
         return objectCount.decrementAndGet();
     }
@@ -89,6 +114,10 @@ public class Container implements Comparable<Container> {
         return objectCount.incrementAndGet();
     }
 
+    public Long addObjectCount(final long delta) {
+        return objectCount.addAndGet(delta);
+    }
+
     @Override
     public int compareTo(Container o) {
         return getName().compareTo(o.getName());
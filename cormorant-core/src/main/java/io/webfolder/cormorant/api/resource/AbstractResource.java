@@ -24,6 +24,7 @@ package io.webfolder.cormorant.api.resource;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Iterator;
 
 public abstract class AbstractResource<T> implements Resource<T> {
@@ -48,4 +49,9 @@ public abstract class AbstractResource<T> implements Resource<T> {
     public String convert(final T o, final ContentFormat contentFormat, final Boolean appendForwardSlash) throws IOException, SQLException {
         return resourceAdapter.convert(o, contentFormat, appendForwardSlash);
     }
+
+    @Override
+    public void prefetch(final Collection<T> objects, final ContentFormat contentFormat) throws IOException, SQLException {
+        resourceAdapter.prefetch(objects, contentFormat);
+    }
 }
@@ -24,8 +24,15 @@ package io.webfolder.cormorant.api.resource;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Collection;
 
 public interface ResourceAdapter<T> {
 
     String convert(T o, ContentFormat contentFormat, Boolean appendForwardSlash) throws IOException, SQLException;
+
+    /**
+     * Called before a page of objects is converted, lets the adapter load their metadata in bulk.
+     */
+    public default void prefetch(Collection<T> objects, ContentFormat contentFormat) throws IOException, SQLException {
+    }
 }
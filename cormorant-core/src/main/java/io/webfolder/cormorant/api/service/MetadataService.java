@@ -23,6 +23,8 @@
 package io.webfolder.cormorant.api.service;
 
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 public interface MetadataService {
@@ -39,6 +41,26 @@ public interface MetadataService {
 
     Map<String, Object> getValues(String namespace) throws SQLException;
 
+    /**
+     * Loads the given keys of many namespaces at once.
+     * 
+     * @return values grouped by namespace, each requested namespace is present even if it has no value
+     */
+    public default Map<String, Map<String, Object>> getValues(
+                                                    final Collection<String> namespaces,
+                                                    final Collection<String> keys) throws SQLException {
+        final Map<String, Map<String, Object>> values = new HashMap<>();
+        for (String namespace : namespaces) {
+            final Map<String, Object> namespaceValues = new HashMap<>(getValues(namespace));
+            namespaceValues.keySet().retainAll(keys);
+            values.put(namespace, namespaceValues);
+        }
+        return values;
+    }
+
+    /**
+     * Adds or updates all values of the namespace at once, a <code>null</code> value removes the key.
+     */
     void setValues(String namespace, Map<String, Object> values) throws SQLException;
 
     void delete(String namespace, String key) throws SQLException;
@@ -22,6 +22,7 @@
  */
 package io.webfolder.cormorant.api.service;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
@@ -43,6 +44,17 @@ public interface ObjectService<T> {
 
     void deleteTempObject(String accountName, T container, T tempObject) throws IOException, SQLException;
 
+    /**
+     * Admits an upload of <code>size</code> bytes if the volume of the container can hold it
+     * together with the other admitted uploads, until the returned admission is closed.
+     * Space is not allocated on disk.
+     * 
+     * @return <code>null</code> if uploads are not admitted by the service, which is the default
+     */
+    default Closeable admitUpload(T container, long size) throws IOException, SQLException {
+        return null;
+    }
+
     T moveObject(String accountName, T tempObject, T targetContainer, String targetObject) throws IOException, SQLException;
 
     long getSize(T object) throws IOException, SQLException;
@@ -90,4 +102,19 @@ public interface ObjectService<T> {
     String getMimeType(T container, T object, boolean autoDetect) throws IOException, SQLException;
 
     String calculateChecksum(List<T> objects) throws IOException, SQLException;
+
+    /**
+     * Defaults to the checksum of the segment content.
+     */
+    default String calculateLargeObjectChecksum(List<T> segments) throws IOException, SQLException {
+        return calculateChecksum(segments);
+    }
+
+    /**
+     * Stores the checksum calculated while the object is written, the default does not store it
+     * and the checksum is calculated on demand.
+     */
+    default void setChecksum(T object, String checksum) throws IOException, SQLException {
+        // no op
+    }
 }
@@ -33,6 +33,7 @@ import static javax.ws.rs.core.Response.Status.NO_CONTENT;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.Map;
 
 import javax.annotation.security.DeclareRoles;
@@ -211,40 +212,26 @@ public class ContainerController<T> {
 
     protected void updateMetadata(final String container) throws SQLException {
         MultivaluedMap<String, String> headers = httpHeaders.getRequestHeaders();
+        Map<String, Object>            values  = new HashMap<>();
         for (String key : headers.keySet()) {
             // Metadata keys (the name of the metadata) must be treated as case-insensitive at all times.
             key = key.toLowerCase(ENGLISH);
             if (key.startsWith(META_PREFIX)) {
                 final String name  = key.substring(META_PREFIX.length(), key.length());
                 final String value = headers.getFirst(key);
-                // A metadata key without a value.
-                // The metadata key already exists for the account.
-                if (value == null || value.isEmpty()) {
-                    if (metadataService.contains(container, name)) {
-                        // The API removes the metadata item from the account.
-                        metadataService.delete(container, name);
-                    }
-                } else {
-                    // A metadata key value.
-                    // The metadata key already exists for the account.
-                    if (metadataService.contains(container, name)) {
-                        // The API updates the metadata key value for the account.
-                        metadataService.update(container, name, value);
-                    } else {
-                        // A metadata key value.
-                        // The metadata key does not already exist for the account.
-                        // The API adds the metadata key and value pair, or item, to the account.
-                        metadataService.add(container, name, value);
-                    }
-                }
+                // A metadata key without a value removes the metadata item,
+                // a metadata key value adds or updates the item.
+                values.put(name, value == null || value.isEmpty() ? null : value);
             }
             if (key.startsWith(META_REMOVE_PREFIX)) {
                 String name = key.substring(META_REMOVE_PREFIX.length(), key.length());
-                if (metadataService.contains(container, name)) {
-                    metadataService.delete(container, name);
-                }
+                values.put(name, null);
             }
         }
+        // all items of the request are applied at once
+        if ( ! values.isEmpty() ) {
+            metadataService.setValues(container, values);
+        }
     }
 
     /**
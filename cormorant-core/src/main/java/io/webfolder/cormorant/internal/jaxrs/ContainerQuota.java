@@ -0,0 +1,103 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.internal.jaxrs;
+
+import static javax.ws.rs.core.Response.Status.REQUEST_ENTITY_TOO_LARGE;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import io.webfolder.cormorant.api.exception.CormorantException;
+import io.webfolder.cormorant.api.model.Container;
+import io.webfolder.cormorant.api.service.AccountService;
+import io.webfolder.cormorant.api.service.ContainerService;
+
+/**
+ * Enforces the <code>quota-bytes</code> and <code>quota-count</code> container metadata,
+ * shared by the object controller and the upload handler.
+ * 
+ * The checks made before the request body is read are advisory, concurrent uploads may pass them together.
+ * The bytes of an object are added to the container only by {@link #addBytesUsed},
+ * which compares and updates the counter atomically.
+ */
+public class ContainerQuota<T> {
+
+    public static final String QUOTA_BYTES_EXCEEDED = "The request size exceeded the configured maximum quota bytes.";
+
+    private final AccountService      accountService;
+
+    private final ContainerService<T> containerService;
+
+    public ContainerQuota(
+                final AccountService      accountService,
+                final ContainerService<T> containerService) {
+        this.accountService   = accountService;
+        this.containerService = containerService;
+    }
+
+    /**
+     * Rejects an upload with a known length which does not fit into the quota.
+     * Chunked transfer uploads are not rejected here, their size is unknown until the body is read.
+     * The remaining quota bytes limit the request body instead, see {@link #getBytesLeft}.
+     */
+    public void check(final Long contentLength, final String accountName, final String containerName) throws IOException, SQLException {
+        if ( contentLength == null ) {
+            return;
+        }
+        final long      maxQuotaBytes = containerService.getMaxQuotaBytes(accountName, containerName);
+        final long      maxQuotaCount = containerService.getMaxQuotaCount(accountName, containerName);
+        final Container container     = accountService.getContainer(accountName, containerName);
+        if (container.getBytesUsed() + contentLength > maxQuotaBytes) {
+            throw new CormorantException("The request size exceeded the configured maximum quota bytes [" + maxQuotaBytes + "].",
+                            REQUEST_ENTITY_TOO_LARGE);
+        }
+        if (container.getObjectCount().longValue() + 1 > maxQuotaCount) {
+            throw new CormorantException("The request size exceeded the configured maximum quota count [" + maxQuotaCount + "].",
+                            REQUEST_ENTITY_TOO_LARGE);
+        }
+    }
+
+    /**
+     * Returns the number of bytes which can be added to the container before <code>quota-bytes</code> is exceeded.
+     */
+    public long getBytesLeft(final String accountName, final String containerName) throws IOException, SQLException {
+        final long maxQuotaBytes = containerService.getMaxQuotaBytes(accountName, containerName);
+        if (maxQuotaBytes == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        final Container container = accountService.getContainer(accountName, containerName);
+        return Math.max(0L, maxQuotaBytes - container.getBytesUsed());
+    }
+
+    /**
+     * Adds <code>delta</code> to the bytes used by the container, fails with <code>413</code>
+     * and leaves the counter untouched if the result exceeds <code>quota-bytes</code>.
+     */
+    public void addBytesUsed(final Container container, final String accountName, final String containerName, final long delta) throws SQLException {
+        final long maxQuotaBytes = containerService.getMaxQuotaBytes(accountName, containerName);
+        if ( ! container.addBytesUsed(delta, maxQuotaBytes) ) {
+            throw new CormorantException("The request size exceeded the configured maximum quota bytes [" + maxQuotaBytes + "].",
+                            REQUEST_ENTITY_TOO_LARGE);
+        }
+    }
+}
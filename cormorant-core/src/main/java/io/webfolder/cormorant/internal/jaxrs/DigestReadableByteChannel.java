@@ -0,0 +1,89 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.internal.jaxrs;
+
+import static java.lang.String.format;
+import static java.security.MessageDigest.getInstance;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import io.webfolder.cormorant.api.exception.CormorantException;
+
+class DigestReadableByteChannel implements ReadableByteChannel {
+
+    private static final String MD5_CHECKSUM = "MD5";
+
+    private final ReadableByteChannel channel;
+
+    private final MessageDigest       digest;
+
+    private String checksum;
+
+    DigestReadableByteChannel(final ReadableByteChannel channel) {
+        this.channel = channel;
+        try {
+            this.digest = getInstance(MD5_CHECKSUM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new CormorantException(e);
+        }
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        final int start = dst.position();
+        final int read  = channel.read(dst);
+        if (read > 0) {
+            final ByteBuffer buffer = dst.duplicate();
+            buffer.limit(start + read);
+            buffer.position(start);
+            digest.update(buffer);
+        }
+        return read;
+    }
+
+    /**
+     * Returns the MD5 checksum of the bytes read so far.
+     * The digest is finished by the first call, so the channel must not be read afterwards.
+     */
+    public String getChecksum() {
+        if (checksum == null) {
+            checksum = format("%032x", new BigInteger(1, digest.digest()));
+        }
+        return checksum;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
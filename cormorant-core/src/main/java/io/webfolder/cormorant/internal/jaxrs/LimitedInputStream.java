@@ -23,20 +23,34 @@
 package io.webfolder.cormorant.internal.jaxrs;
 
 import static java.lang.Math.min;
+import static javax.ws.rs.core.Response.Status.REQUEST_ENTITY_TOO_LARGE;
 
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import io.webfolder.cormorant.api.exception.CormorantException;
+
 class LimitedInputStream extends FilterInputStream {
 
     private long left;
 
     private long mark = -1;
 
+    private final String exceededMessage;
+
     LimitedInputStream(final InputStream in, final long limit) {
+        this(in, limit, null);
+    }
+
+    /**
+     * @param exceededMessage if not {@code null}, reading past the limit fails with <code>413</code>
+     *                        instead of ending the stream at the limit
+     */
+    LimitedInputStream(final InputStream in, final long limit, final String exceededMessage) {
         super(in);
         left = limit;
+        this.exceededMessage = exceededMessage;
     }
 
     @Override
@@ -53,6 +67,7 @@ class LimitedInputStream extends FilterInputStream {
     @Override
     public int read() throws IOException {
         if (left == 0) {
+            checkExceeded();
             return -1;
         }
         int result = in.read();
@@ -65,6 +80,7 @@ class LimitedInputStream extends FilterInputStream {
     @Override
     public int read(final byte[] b, final int off, final int len) throws IOException {
         if (left == 0) {
+            checkExceeded();
             return -1;
         }
         int length = (int) min(len, left);
@@ -87,6 +103,12 @@ class LimitedInputStream extends FilterInputStream {
         left = mark;
     }
 
+    protected void checkExceeded() throws IOException {
+        if ( exceededMessage != null && in.read() != -1 ) {
+            throw new CormorantException(exceededMessage, REQUEST_ENTITY_TOO_LARGE);
+        }
+    }
+
     @Override
     public long skip(final long n) throws IOException {
         final long skip    = min(n, left);
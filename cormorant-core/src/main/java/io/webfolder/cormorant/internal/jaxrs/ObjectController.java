@@ -24,6 +24,7 @@ package io.webfolder.cormorant.internal.jaxrs;
 
 import static io.webfolder.cormorant.api.Json.read;
 import static io.webfolder.cormorant.api.metadata.MetadataServiceFactory.MANIFEST_EXTENSION;
+import static io.webfolder.cormorant.internal.jaxrs.ContainerQuota.QUOTA_BYTES_EXCEEDED;
 import static java.lang.Boolean.TRUE;
 import static java.lang.Double.compare;
 import static java.lang.Long.parseLong;
@@ -54,6 +55,7 @@ import static javax.ws.rs.core.Response.Status.OK;
 import static javax.ws.rs.core.Response.Status.REQUEST_ENTITY_TOO_LARGE;
 
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
@@ -111,6 +113,7 @@ import io.webfolder.cormorant.internal.response.ObjectDeleteResponse;
 import io.webfolder.cormorant.internal.response.ObjectHeadResponse;
 import io.webfolder.cormorant.internal.response.ObjectPostResponse;
 import io.webfolder.cormorant.internal.response.ObjectPutResponse;
+import io.webfolder.cormorant.internal.undertow.StagedObject;
 
 @Path("/v1/{account}/{container}")
 @RolesAllowed({ "cormorant-object" })
@@ -145,6 +148,10 @@ public class ObjectController<T> implements Util {
 
     private static final String  DIRECTORY             = "application/directory";
 
+    private static final String  X_CORMORANT_PREFIX    = "X-Cormorant-";
+
+    private static final String  X_CORMORANT_DELETED   = "X-Cormorant-Deleted";
+
     private final AccountService      accountService;
 
     private final ContainerService<T> containerService;
@@ -155,6 +162,8 @@ public class ObjectController<T> implements Util {
 
     private final MetadataService     metadataService;
 
+    private final ContainerQuota<T>   quota;
+
     @Context
     private HttpHeaders        httpHeaders;
 
@@ -178,6 +187,7 @@ public class ObjectController<T> implements Util {
         this.objectService         = objectService   ;
         this.metadataService       = metadataService ;
         this.systemMetadataService = systemMetadata  ;
+        this.quota                 = new ContainerQuota<>(accountService, containerService);
     }
 
     @GET
@@ -202,10 +212,14 @@ public class ObjectController<T> implements Util {
 
         final boolean isStaticLargeObject = objectService.isStaticLargeObject(object);
 
+        String              objectNamespace      = null;
+        Map<String, Object> objectSystemMetadata = null;
+
         // dynamic large object that has X_OBJECT_MANIFEST
         if ( object != null ) {
-            final String  namespace     = objectService.getNamespace(container, object);
-                         objectManifest = removeLeadingSlash(systemMetadataService.get(namespace, X_OBJECT_MANIFEST));
+                   objectNamespace      = objectService.getNamespace(container, object);
+                   objectSystemMetadata = systemMetadataService.getValues(objectNamespace);
+                         objectManifest = removeLeadingSlash((String) objectSystemMetadata.get(X_OBJECT_MANIFEST));
             if ( objectManifest != null ) {
                 final String manifestContainer = objectManifest.substring(0, objectManifest.indexOf(FORWARD_SLASH));
                 container = containerService.getContainer(request.getAccount(), manifestContainer);
@@ -216,7 +230,7 @@ public class ObjectController<T> implements Util {
                 }
                 dynamicLargeObject     = true;
                 dynamicLargeObjects    = objectService.listDynamicLargeObject(container, object);
-                dynamicLargeObjectEtag = objectService.calculateChecksum(dynamicLargeObjects);
+                dynamicLargeObjectEtag = objectService.calculateLargeObjectChecksum(dynamicLargeObjects);
             }
         }
 
@@ -239,7 +253,7 @@ public class ObjectController<T> implements Util {
                                 container = dynamicLargeObjectContainer;
                                 dynamicLargeObject = true;
                                 dynamicLargeObjects    = objectService.listDynamicLargeObject(container, object);
-                                dynamicLargeObjectEtag = objectService.calculateChecksum(dynamicLargeObjects);
+                                dynamicLargeObjectEtag = objectService.calculateLargeObjectChecksum(dynamicLargeObjects);
                             }
                         }
                     }
@@ -267,8 +281,12 @@ public class ObjectController<T> implements Util {
         final String  namespace          = objectService.getNamespace(container, object);
         final long    lastModified       = objectService.getLastModified(object);
         final long    creationTime       = objectService.getCreationTime(object);
-        final String  etag               = dynamicLargeObjectEtag != null ? dynamicLargeObjectEtag : objectService.calculateChecksum(asList(object));
-        final String  contentDisposition = systemMetadataService.get(namespace, CONTENT_DISPOSITION);
+
+        // all system metadata of the object is loaded at once
+        final Map<String, Object> systemMetadata = namespace.equals(objectNamespace) ?
+                                                        objectSystemMetadata : systemMetadataService.getValues(namespace);
+
+        final String  contentDisposition = (String) systemMetadata.get(CONTENT_DISPOSITION);
 
         final Map<String, String> headers = new HashMap<>();
         for (Map.Entry<String, Object> entry : metadataService.getValues(namespace).entrySet()) {
@@ -278,8 +296,6 @@ public class ObjectController<T> implements Util {
             headers.put(headerName, valueOf(headerValue));
         }
 
-        final Map<String, Object> systemMetadata = systemMetadataService.getValues(namespace);
-
         if ( systemMetadata.containsKey(CONTENT_ENCODING)) {
             headers.put(CONTENT_ENCODING, (String) systemMetadata.get(CONTENT_ENCODING));
         }
@@ -306,6 +322,7 @@ public class ObjectController<T> implements Util {
 
         final String contentType;
         final Long   size;
+        final String etag;
 
         List<Segment<T>> staticSegments;
         
@@ -315,19 +332,25 @@ public class ObjectController<T> implements Util {
             staticSegments = objectService.listStaticLargeObject(request.getAccount(), object);
             if ( !staticSegments.isEmpty() ) {
                 long totalSize = 0L;
+                final List<T> segmentObjects = new ArrayList<>(staticSegments.size());
                 for (Segment<T> next : staticSegments) {
                     totalSize += next.getSize();
+                    segmentObjects.add(next.getObject());
                 }
                 size = totalSize;
+                etag = objectService.calculateLargeObjectChecksum(segmentObjects);
                 contentType = staticSegments.get(0).getContentType();
             } else {
                 size = 0L;
                 contentType = null;
+                etag = MD5_OF_EMPTY_STRING;
             }
         } else {
             staticSegments = emptyList();
-            contentType = systemMetadataService.get( ! dynamicLargeObjects.isEmpty() ?
-                                    objectService.getNamespace(container, dynamicLargeObjects.get(0)) : namespace, CONTENT_TYPE);
+            etag = dynamicLargeObjectEtag != null ? dynamicLargeObjectEtag : objectService.calculateChecksum(asList(object));
+            contentType = ! dynamicLargeObjects.isEmpty() ?
+                                    systemMetadataService.get(objectService.getNamespace(container, dynamicLargeObjects.get(0)), CONTENT_TYPE) :
+                                    (String) systemMetadata.get(CONTENT_TYPE);
             size = dynamicLargeObject ? objectService.getDyanmicObjectSize(container, object) : objectService.getSize(object);
         }
 
@@ -427,12 +450,16 @@ public class ObjectController<T> implements Util {
             return status(NOT_FOUND).build();
         }
         final String namespace = objectService.getNamespace(container, object);
+        final Map<String, Object> sysMetadata = systemMetadataService.getValues(namespace);
         if (dir) {
-            final boolean deleted = "deleted".equals(systemMetadataService.get(namespace, "X-Cormorant-Deleted"));
+            final boolean deleted = "deleted".equals(sysMetadata.get(X_CORMORANT_DELETED));
             if (deleted) {
                 return status(NOT_FOUND).build();
             }
         }
+        final String objectManifest = removeLeadingSlash((String) sysMetadata.get(X_OBJECT_MANIFEST));
+        // internal keys are never sent to the client
+        sysMetadata.keySet().removeIf(key -> key.startsWith(X_CORMORANT_PREFIX));
         final ObjectHeadResponse response = new ObjectHeadResponse();
         final ResponseBuilder    builder  = ok().entity(response);
         for (Map.Entry<String, Object> entry : metadataService.getValues(namespace).entrySet()) {
@@ -441,7 +468,6 @@ public class ObjectController<T> implements Util {
             final String headerName  = "X-Object-Meta-" + key;
             builder.header(headerName, headerValue);
         }
-        final Map<String, Object> sysMetadata = systemMetadataService.getValues(namespace);
 
         final boolean dynamicLargeObject = sysMetadata.containsKey(X_OBJECT_MANIFEST);
         final boolean staticLargeObject  = objectService.isStaticLargeObject(object);
@@ -462,7 +488,6 @@ public class ObjectController<T> implements Util {
             String etag = (String) sysMetadata.get(ETAG);
             if (dynamicLargeObject) {
                 if ( object != null ) {
-                    final String objectManifest = removeLeadingSlash(systemMetadataService.get(namespace, X_OBJECT_MANIFEST));
                     if ( objectManifest != null ) {
                         container = containerService.getContainer(request.getAccount(), objectManifest.substring(0, objectManifest.indexOf(FORWARD_SLASH)));
                         final String manifestPath = objectManifest.substring(objectManifest.indexOf(FORWARD_SLASH) + 1, objectManifest.length());
@@ -474,23 +499,25 @@ public class ObjectController<T> implements Util {
                 }
                 final List<T> objects = objectService.listDynamicLargeObject(container, object);
                 if ( ! objects.isEmpty() ) {
-                    etag = objectService.calculateChecksum(objects);
+                    etag = objectService.calculateLargeObjectChecksum(objects);
                 }
                 final long size = objectService.getDyanmicObjectSize(container, object);
                 sysMetadata.put(CONTENT_LENGTH, size);
             }
-            if (etag == null) {
-                etag = objectService.calculateChecksum(asList(object));
+            if (staticLargeObject) {
+                final List<Segment<T>> segments = objectService.listStaticLargeObject(request.getAccount(), object);
+                final List<T> segmentObjects = new ArrayList<>(segments.size());
+                long totalSize = 0L;
+                for (Segment<T> next : segments) {
+                    totalSize += next.getSize();
+                    segmentObjects.add(next.getObject());
+                }
+                sysMetadata.put(CONTENT_LENGTH, totalSize);
+                etag = objectService.calculateLargeObjectChecksum(segmentObjects);
             }
-        }
-
-        if (staticLargeObject) {
-            List<Segment<T>> segments = objectService.listStaticLargeObject(request.getAccount(), object);
-            long totalSize = 0L;
-            for (Segment<T> next : segments) {
-                totalSize += next.getSize();
+            if (etag != null) {
+                sysMetadata.put(ETAG, etag);
             }
-            sysMetadata.put(CONTENT_LENGTH, totalSize);
         }
 
         if ( "0".equals(sysMetadata.get(CONTENT_LENGTH)) || ! sysMetadata.containsKey(CONTENT_LENGTH) ||
@@ -557,11 +584,11 @@ public class ObjectController<T> implements Util {
         final boolean emptyDirectory = isDirectory && objectService.isEmptyDirectory(container, object);
         if ( isDirectory && ! emptyDirectory ) {
             final String namespace = objectService.getNamespace(container, object);
-            final String deleted   = systemMetadataService.get(namespace, "X-Cormorant-Deleted");
+            final String deleted   = systemMetadataService.get(namespace, X_CORMORANT_DELETED);
             if (deleted == null) {
                 systemMetadataService.delete(namespace);
                 metadataService.delete(namespace);
-                systemMetadataService.add(namespace, "X-Cormorant-Deleted", "true");
+                systemMetadataService.add(namespace, X_CORMORANT_DELETED, "true");
             }
             return status(NO_CONTENT)
                     .build();
@@ -796,6 +823,9 @@ public class ObjectController<T> implements Util {
 
         checkQuota(sourceContentLength, targetAccount, targetContainerName);
 
+        final T    existingObject = getCountedObject(targetAccount, targetContainerName, targetObjectPath);
+        final long existingSize   = existingObject != null ? objectService.getSize(existingObject) : 0L;
+
         final T targetObject = objectService.copyObject(targetAccount,
                                                         targetContainer,
                                                         targetObjectPath,
@@ -814,6 +844,14 @@ public class ObjectController<T> implements Util {
             metadataService.delete(targetNamespace);
         }
 
+        if ( ! copySelf && ! objectService.isStaticLargeObject(targetObject) ) {
+            final Container containerInfo = accountService.getContainer(targetAccount, targetContainerName);
+            if ( existingObject == null ) {
+                containerInfo.incrementObjectCount();
+            }
+            containerInfo.addBytesUsed(objectService.getSize(targetObject) - existingSize);
+        }
+
         final Map<String, Object> systemMetadata = systemMetadataService.getValues(sourceNamespace);
         systemMetadataService.setValues(targetNamespace, systemMetadata);
 
@@ -861,82 +899,61 @@ public class ObjectController<T> implements Util {
     }
 
     protected void checkQuota(final Long contentLength, final String accountName, final String containerName) throws IOException, SQLException {
-        final long      maxQuotaBytes = containerService.getMaxQuotaBytes(accountName, containerName);
-        final long      maxQuotaCount = containerService.getMaxQuotaCount(accountName, containerName);
-        final Container container     = accountService.getContainer(accountName, containerName);
-
-        // Unable to reject chunked transfer uploads.
-        // The system cannot know if the request will exceed the quota so the system allows the request.
-        // However, once the quota is exceeded, any subsequent uploads that use chunked transfer encoding fail.
-        if ( contentLength != null ) {
-            if (container.getBytesUsed() + contentLength > maxQuotaBytes) {
-                throw new CormorantException("The request size exceeded the configured maximum quota bytes [" + maxQuotaBytes + "].",
-                                REQUEST_ENTITY_TOO_LARGE);
-            }
-            if (container.getObjectCount().longValue() + 1 > maxQuotaCount) {
-                throw new CormorantException("The request size exceeded the configured maximum quota count [" + maxQuotaCount + "].",
-                                REQUEST_ENTITY_TOO_LARGE);
-            }
-        }
+        quota.check(contentLength, accountName, containerName);
+    }
+
+    /**
+     * Returns the object if it is included in the container counters, static large object manifests are not.
+     */
+    protected T getCountedObject(final String accountName, final String containerName, final String objectPath) throws IOException, SQLException {
+        final T object = objectService.getObject(accountName, containerName, objectPath);
+        return object != null && ! objectService.isStaticLargeObject(object) ? object : null;
     }
 
     protected void putSystemMetadata(final String namespace, final ResponseBuilder builder) throws SQLException {
-        if ( systemMetadataService.get(namespace, CONTENT_TYPE) != null ) {
-            response.setContentType(systemMetadataService.get(namespace, CONTENT_TYPE));
+        final Map<String, Object> systemMetadata = systemMetadataService.getValues(namespace);
+        if ( systemMetadata.get(CONTENT_TYPE) != null ) {
+            response.setContentType((String) systemMetadata.get(CONTENT_TYPE));
         }
-        if ( systemMetadataService.get(namespace, CONTENT_ENCODING) != null ) {
-            builder.header(CONTENT_ENCODING, systemMetadataService.get(namespace, CONTENT_ENCODING));
+        if ( systemMetadata.get(CONTENT_ENCODING) != null ) {
+            builder.header(CONTENT_ENCODING, systemMetadata.get(CONTENT_ENCODING));
         }
-        if ( systemMetadataService.get(namespace, CONTENT_DISPOSITION) != null ) {
-            builder.header(CONTENT_DISPOSITION, systemMetadataService.get(namespace, CONTENT_DISPOSITION));
+        if ( systemMetadata.get(CONTENT_DISPOSITION) != null ) {
+            builder.header(CONTENT_DISPOSITION, systemMetadata.get(CONTENT_DISPOSITION));
         }
-        if ( systemMetadataService.get(namespace, X_DELETE_AT) != null ) {
-            builder.header(X_DELETE_AT, systemMetadataService.get(namespace, X_DELETE_AT));
+        if ( systemMetadata.get(X_DELETE_AT) != null ) {
+            builder.header(X_DELETE_AT, systemMetadata.get(X_DELETE_AT));
         }
-        if ( systemMetadataService.get(namespace, X_DELETE_AFTER) != null ) {
-            builder.header(X_DELETE_AFTER, systemMetadataService.get(namespace, X_DELETE_AFTER));
+        if ( systemMetadata.get(X_DELETE_AFTER) != null ) {
+            builder.header(X_DELETE_AFTER, systemMetadata.get(X_DELETE_AFTER));
         }
-        if ( systemMetadataService.get(namespace, X_OBJECT_MANIFEST) != null ) {
-            builder.header(X_OBJECT_MANIFEST, systemMetadataService.get(namespace, X_OBJECT_MANIFEST));
+        if ( systemMetadata.get(X_OBJECT_MANIFEST) != null ) {
+            builder.header(X_OBJECT_MANIFEST, systemMetadata.get(X_OBJECT_MANIFEST));
         }
     }
 
     protected void updateMetadata(String namespace) throws SQLException {
         final MultivaluedMap<String, String> headers = httpHeaders.getRequestHeaders();
+        final Map<String, Object>            values  = new HashMap<>();
         for (String key : headers.keySet()) {
             // Metadata keys (the name of the metadata) must be treated as case-insensitive at all times.
             key = key.toLowerCase(ENGLISH);
             if (key.startsWith(META_PREFIX)) {
                 final String name  = key.substring(META_PREFIX.length(), key.length());
                 final String value = headers.getFirst(key);
-                // A metadata key without a value.
-                // The metadata key already exists for the account.
-                if (value == null) {
-                    if (metadataService.contains(namespace, name)) {
-                        // The API removes the metadata item from the account.
-                        metadataService.delete(namespace, name);
-                    }
-                } else {
-                    // A metadata key value.
-                    // The metadata key already exists for the account.
-                    if (metadataService.contains(namespace, name)) {
-                        // The API updates the metadata key value for the account.
-                        metadataService.update(namespace, name, value);
-                    } else {
-                        // A metadata key value.
-                        // The metadata key does not already exist for the account.
-                        // The API adds the metadata key and value pair, or item, to the account.
-                        metadataService.add(namespace, name, value);
-                    }
-                }
+                // A metadata key without a value removes the metadata item,
+                // a metadata key value adds or updates the item.
+                values.put(name, value);
             }
             if (key.startsWith(META_REMOVE_PREFIX)) {
                 String name = key.substring(META_REMOVE_PREFIX.length(), key.length());
-                if (metadataService.contains(namespace, name)) {
-                    metadataService.delete(namespace, name);
-                }
+                values.put(name, null);
             }
         }
+        // all items of the request are applied at once
+        if ( ! values.isEmpty() ) {
+            metadataService.setValues(namespace, values);
+        }
     }
 
     protected void upload(
@@ -946,6 +963,7 @@ public class ObjectController<T> implements Util {
 
         final T sourceContainer;
         final T sourceObject;
+        final String etag;
 
         final String  copyFrom = removeLeadingSlash(request.getCopyFrom());
         final boolean copy     = copyFrom != null && ! copyFrom.trim().isEmpty();
@@ -988,6 +1006,7 @@ public class ObjectController<T> implements Util {
             if (sourceObject == null) {
                 throw new CormorantException("Failed to copy object from [" + copyFrom + "]. Object not found.");
             }
+            etag = objectService.calculateChecksum(asList(sourceObject));
         } else {
             sourceContainer = containerService.getContainer(request.getAccount(), request.getContainer());
 
@@ -1001,19 +1020,39 @@ public class ObjectController<T> implements Util {
                 throw new CormorantException("Invalid object path [" + request.getObject() + "].");
             }
 
-            final Long          maxTransferSize = chunked ? MAX_UPLOAD_SIZE : request.getContentLength();
-            final TempObject<T> tempObject      = objectService.createTempObject(request.getAccount(), sourceContainer);
+            // the body might be already received by the IO thread, see UploadHandler
+            final StagedObject<T> stagedObject = StagedObject.take();
 
-            try (final ReadableByteChannel readableChannel = newChannel(is);
-                                        final WritableByteChannel writableChannel = tempObject.getWritableByteChannel()) {
-                write(readableChannel, writableChannel, 0L, maxTransferSize);
-                sourceObject = tempObject.toObject();
+            if (stagedObject != null) {
+                sourceObject = stagedObject.getTempObject().toObject();
+                etag         = stagedObject.getChecksum() != null ? stagedObject.getChecksum() :
+                                                objectService.calculateChecksum(asList(sourceObject));
+            } else {
+                final Long maxTransferSize = chunked ? MAX_UPLOAD_SIZE : request.getContentLength();
+                // the size of a chunked upload is unknown, the quota is enforced while the body is read
+                final long        quotaLeft = chunked ? quota.getBytesLeft(request.getAccount(), request.getContainer()) : MAX_UPLOAD_SIZE;
+                final InputStream body      = quotaLeft < MAX_UPLOAD_SIZE ? new LimitedInputStream(is, quotaLeft, QUOTA_BYTES_EXCEEDED) : is;
+
+                // fails with 507 before the request body is read if the volume is short of space
+                try (final Closeable admission = chunked ? null : objectService.admitUpload(sourceContainer, maxTransferSize)) {
+                    final TempObject<T> tempObject = objectService.createTempObject(request.getAccount(), sourceContainer);
+
+                    // MD5 is calculated while the request body is written, the temp object is not read again
+                    try (final DigestReadableByteChannel readableChannel = new DigestReadableByteChannel(newChannel(body));
+                                                final WritableByteChannel writableChannel = tempObject.getWritableByteChannel()) {
+                        write(readableChannel, writableChannel, 0L, maxTransferSize);
+                        sourceObject = tempObject.toObject();
+                        etag         = readableChannel.getChecksum();
+                    } catch (CormorantException e) {
+                        objectService.deleteTempObject(request.getAccount(), sourceContainer, tempObject.toObject());
+                        throw e;
+                    }
+                }
             }
 
             targetContainer = sourceContainer;
         }
 
-        final String              etag           = objectService.calculateChecksum(asList(sourceObject));
         final String              requestETag    = httpHeaders.getHeaderString(ETAG);
         // ----------------------------------------------------------------------------------
         // Ensure object integrity
@@ -1040,27 +1079,52 @@ public class ObjectController<T> implements Util {
         final T       directory      = objectService.getDirectory(targetContainer, request.getObject());
         final boolean dynamicObject  = tempObjectSize == 0 && directory != null;
 
-        final T targetObject;
-        if (dynamicObject) {
-            targetObject = directory;
-        } else {
+        // an overwritten object is replaced in the container counters, not added twice
+        final T       existingObject = dynamicObject ? null : getCountedObject(request.getAccount(), request.getContainer(), request.getObject());
+        final long    existingSize   = existingObject != null ? objectService.getSize(existingObject) : 0L;
+
+        // the bytes are counted before the object is committed, so concurrent uploads cannot exceed quota-bytes together
+        final long    bytesAdded     = dynamicObject ? 0L : tempObjectSize - existingSize;
+        try {
+            quota.addBytesUsed(containerInfo, request.getAccount(), request.getContainer(), bytesAdded);
+        } catch (CormorantException e) {
             if ( ! copy ) {
-                targetObject = objectService.moveObject(request.getAccount(), sourceObject, targetContainer, request.getObject());
+                objectService.deleteTempObject(request.getAccount(), sourceContainer, sourceObject);
+            }
+            throw e;
+        }
+
+        final T targetObject;
+        try {
+            if (dynamicObject) {
+                targetObject = directory;
             } else {
-                targetObject = objectService.copyObject(request.getAccount(),
-                                                        targetContainer,
-                                                        request.getObject(),
-                                                        request.getAccount(),
-                                                        sourceContainer,
-                                                        sourceObject,
-                                                        null);
+                if ( ! copy ) {
+                    targetObject = objectService.moveObject(request.getAccount(), sourceObject, targetContainer, request.getObject());
+                    objectService.setChecksum(targetObject, etag);
+                } else {
+                    targetObject = objectService.copyObject(request.getAccount(),
+                                                            targetContainer,
+                                                            request.getObject(),
+                                                            request.getAccount(),
+                                                            sourceContainer,
+                                                            sourceObject,
+                                                            null);
+                }
             }
+        } catch (IOException | SQLException | RuntimeException e) {
+            containerInfo.addBytesUsed(-bytesAdded);
+            throw e;
         }
 
-        containerInfo.incrementObjectCount();
+        if ( existingObject == null ) {
+            containerInfo.incrementObjectCount();
+        }
 
-        final Long size = dynamicObject ? objectService.getDyanmicObjectSize(targetContainer, targetObject) : objectService.getSize(targetObject);
-        containerInfo.addBytesUsed(size);
+        if (dynamicObject) {
+            final Long size = objectService.getDyanmicObjectSize(targetContainer, targetObject);
+            containerInfo.addBytesUsed(size - existingSize);
+        }
         final String contentType = ! dynamicObject && TRUE.equals(request.getDetectContentType())     ?
                                      objectService.getMimeType(sourceContainer, targetObject, true) :
                                      httpHeaders.getHeaderString(CONTENT_TYPE)                        ;
@@ -1131,7 +1195,7 @@ public class ObjectController<T> implements Util {
             response.setETag(etag);
         } else {
             final List<T> objects                = objectService.listDynamicLargeObject(targetContainer, targetObject);
-            final String  dynamicLargeObjectEtag = objectService.calculateChecksum(objects);
+            final String  dynamicLargeObjectEtag = objectService.calculateLargeObjectChecksum(objects);
             response.setETag(dynamicLargeObjectEtag);
         }
     }
@@ -1216,7 +1280,7 @@ public class ObjectController<T> implements Util {
         }
         final T container              = containerService.getContainer(request.getAccount(), request.getContainer());
         final TempObject<T> tempObject = objectService.createTempObject(request.getAccount(), container);
-        try (ReadableByteChannel readableChannel = newChannel(new ByteArrayInputStream(data));
+        try (DigestReadableByteChannel readableChannel = new DigestReadableByteChannel(newChannel(new ByteArrayInputStream(data)));
                     WritableByteChannel writableChannel = tempObject.getWritableByteChannel()) {
             write(readableChannel, writableChannel, 0L, contentLength);
             T temp = tempObject.toObject();
@@ -1224,7 +1288,9 @@ public class ObjectController<T> implements Util {
                                                             temp,
                                                             container,
                                                             request.getObject() + MANIFEST_EXTENSION);
-            final String eTag = objectService.calculateChecksum(asList(object));
+            objectService.setChecksum(object, readableChannel.getChecksum());
+            // Etag of the static large object is the MD5 of the concatenated segment etags
+            final String eTag = objectService.calculateLargeObjectChecksum(files);
             response.setETag("\"" + eTag + "\"");
             response.setContentType(APPLICATION_JSON);
             response.setLastModified(valueOf(objectService.getLastModified(object)));
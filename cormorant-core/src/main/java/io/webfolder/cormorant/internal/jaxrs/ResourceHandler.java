@@ -24,14 +24,12 @@ package io.webfolder.cormorant.internal.jaxrs;
 
 import static java.lang.Long.parseLong;
 import static java.lang.Long.toHexString;
+import static java.lang.Math.min;
 import static java.lang.String.valueOf;
-import static java.nio.ByteBuffer.allocateDirect;
-import static java.nio.ByteBuffer.wrap;
 import static java.nio.channels.Channels.newChannel;
-import static java.nio.channels.Channels.newInputStream;
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.binarySearch;
 import static java.util.Arrays.sort;
+import static java.util.Collections.singletonList;
 import static java.util.concurrent.ThreadLocalRandom.current;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.regex.Pattern.compile;
@@ -43,17 +41,13 @@ import static javax.ws.rs.core.Response.Status.PRECONDITION_FAILED;
 import static javax.ws.rs.core.Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.SequenceInputStream;
-import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.Vector;
 import java.util.regex.Pattern;
 
 import javax.servlet.ServletOutputStream;
@@ -64,13 +58,12 @@ import javax.ws.rs.core.Response.Status;
 import io.webfolder.cormorant.api.Util;
 import io.webfolder.cormorant.api.model.Segment;
 import io.webfolder.cormorant.api.service.ObjectService;
+import io.webfolder.cormorant.internal.undertow.FileTransfer;
 
 class ResourceHandler<T> implements Util {
 
     private static final Pattern RANGE_PATTERN        = compile("^bytes=[0-9]*-[0-9]*(,[0-9]*-[0-9]*)*$");
     private static final long    ONE_SECOND_IN_MILLIS = SECONDS.toMillis(1);
-    private static final int     BUFFER_SIZE          = 16 * 1024;
-    private static final byte[]  NEW_LINE             = "\r\n".getBytes(UTF_8);
 
     private final ObjectService<T> objectService;
 
@@ -218,12 +211,7 @@ class ResourceHandler<T> implements Util {
         if (ranges.size() == 1) {
             final Range range = ranges.get(0);
             response.setContentType(resource.getContentType());
-            if ( ! resource.isDynamicLargeObject() ) {
-                response.setContentLengthLong(range.getLength());
-            } else {
-                final long size = objectService.getDyanmicObjectSize(resource.getContainer(), resource.getObject());
-                response.setContentLengthLong(size);
-            }
+            response.setContentLengthLong(range.getLength());
 
             final boolean all = range.getStart() == 0 && (range.getEnd() + 1) == resource.getLength();
 
@@ -251,178 +239,93 @@ class ResourceHandler<T> implements Util {
                         final List<Range>         ranges,
                         final String              contentType)
             throws IOException, SQLException {
-        if (ranges.size() == 1) {
-            final Range range = ranges.get(0);
-            if ( ! resource.isStaticLargeObject() && ! resource.isDynamicLargeObject() ) {
-                try (final FileChannel readableChannel = (FileChannel) objectService.getReadableChannel(resource.getObject());
-                        final WritableByteChannel writableChannel = newChannel(response.getOutputStream())) {
-                    readableChannel.transferTo(range.getStart(), range.getLength(), writableChannel);
-                }
-            } else {
-                final boolean fullRange = range.getStart() == 0L && (range.getEnd() + 1) == range.getLength();
-                if (fullRange) {
-                    List<T> objects = new ArrayList<>();
-                    if (resource.isDynamicLargeObject()) {
-                        objects = objectService.listDynamicLargeObject(resource.getContainer(), resource.getObject());
-                    } else {
-                        for (Segment<T> next : resource.getSegments()) {
-                            objects.add(next.getObject());
-                        }
-                    }
-                    try (final WritableByteChannel writableChannel = newChannel(response.getOutputStream())) {
-                        for (T next : objects) {
-                            try (FileChannel readableChannel = (FileChannel) objectService.getReadableChannel(next)) {
-                                long size = objectService.getSize(next);
-                                readableChannel.transferTo(0L, size, writableChannel);
-                            }
-                        }
-                    }                    
-                } else {
-                    if (resource.isDynamicLargeObject()) {
-                        Vector<InputStream> streams = new Vector<>();
-                        for (T next : objectService.listDynamicLargeObject(resource.getContainer(), resource.getObject())) {
-                            InputStream is = newInputStream(objectService.getReadableChannel(next));
-                            streams.add(is);
-                        }
-                        long totalSize = objectService.getDyanmicObjectSize(resource.getContainer(), resource.getObject());
-                        try (ServletOutputStream sos = response.getOutputStream();
-                                SequenceInputStream is = new SequenceInputStream(streams.elements())) {
-                            for (Range next : ranges) {
-                                copy(is, totalSize, response.getOutputStream(), next.getStart(), next.getLength());
-                            }
-                        }
-                    } else if(resource.isStaticLargeObject()) {
-                        Vector<InputStream> streams = new Vector<>();
-                        for (Segment<T> next : resource.getSegments()) {
-                            InputStream is = newInputStream(objectService.getReadableChannel(next.getObject()));
-                            streams.add(is);
-                        }
-                        long totalSize = 0L;
-                        for (Segment<T> segment : resource.getSegments()) {
-                            long size = objectService.getSize(segment.getObject());
-                            totalSize += size;
-                        }
-                        try (ServletOutputStream sos = response.getOutputStream();
-                                SequenceInputStream is = new SequenceInputStream(streams.elements())) {
-                            for (Range next : ranges) {
-                                copy(is, totalSize, response.getOutputStream(), next.getStart(), next.getLength());
-                            }
-                        }
-                    }
-                }
-            }
-        } else {
-            if (resource.isDynamicLargeObject()) {
-                Vector<InputStream> streams = new Vector<>();
-                for (T next : objectService.listDynamicLargeObject(resource.getContainer(), resource.getObject())) {
-                    InputStream is = newInputStream(objectService.getReadableChannel(next));
-                    streams.add(is);
-                }
-                long totalSize = objectService.getDyanmicObjectSize(resource.getContainer(), resource.getObject());
-                try (ServletOutputStream sos = response.getOutputStream();
-                        SequenceInputStream is = new SequenceInputStream(streams.elements())) {
-                    for (Range r : ranges) {
-                        sos.println();
-                        sos.println("--" + r.getBoundary());
-                        sos.println("Content-Type: " + contentType);
-                        sos.println("Content-Range: bytes " + r.getStart() + "-" + r.getEnd() + "/" + totalSize);                        
-                        copy(is, totalSize, response.getOutputStream(), r.getStart(), r.getLength());
-                    }
-                    sos.println();
-                    sos.println("--" + ranges.get(0).getBoundary() + "--");
-                }
-            } else if (resource.isStaticLargeObject()) {
-                Vector<InputStream> streams = new Vector<>();
-                for (Segment<T> next : resource.getSegments()) {
-                    InputStream is = newInputStream(objectService.getReadableChannel(next.getObject()));
-                    streams.add(is);
-                }
-                long totalSize = 0L;
-                for (Segment<T> segment : resource.getSegments()) {
-                    long size = objectService.getSize(segment.getObject());
-                    totalSize += size;
-                }
-                try (ServletOutputStream sos = response.getOutputStream();
-                        SequenceInputStream is = new SequenceInputStream(streams.elements())) {
-                    for (Range next : ranges) {
-                        sos.println();
-                        sos.println("--" + next.getBoundary());
-                        sos.println("Content-Type: " + contentType);
-                        sos.println("Content-Range: bytes " + next.getStart() + "-" + next.getEnd() + "/" + totalSize);                        
-                        copy(is, totalSize, response.getOutputStream(), next.getStart(), next.getLength());
-                    }
-                    sos.println();
-                    sos.println("--" + ranges.get(0).getBoundary() + "--");
-                }
+        final SegmentIndex<T> index = createSegmentIndex(resource);
+        try (final ServletOutputStream os = response.getOutputStream()) {
+            if (ranges.size() == 1) {
+                final Range range = ranges.get(0);
+                write(index, range.getStart(), range.getLength(), os);
             } else {
-                try (final FileChannel readableChannel = (FileChannel) objectService.getReadableChannel(resource.getObject());
-                        final WritableByteChannel writableChannel = newChannel(response.getOutputStream())) {
-                    ByteBuffer NL = wrap(NEW_LINE);
-                    for (final Range range : ranges) {
-                        NL.clear();
-                        writableChannel.write(NL);
-                        writableChannel.write(wrap(("--" + range.getBoundary()).getBytes(UTF_8)));
-                        NL.clear();
-                        writableChannel.write(NL);
-                        writableChannel.write(wrap(("Content-Type: " + contentType).getBytes(UTF_8)));
-                        NL.clear();
-                        writableChannel.write(NL);
-                        writableChannel.write(wrap(("Content-Range: bytes " + range.getStart() + '-' + range.getEnd() + '/' + range.getLength()).getBytes(UTF_8)));
-                        NL.clear();
-                        writableChannel.write(NL);
-                        NL.clear();
-                        writableChannel.write(NL);
-                        NL.clear();
-
-                        readableChannel.position(0L);
-
-                        final ByteBuffer buffer = allocateDirect(BUFFER_SIZE);
-                        long size = 0;
-                        while ( readableChannel.read(buffer, range.getStart() + size) != -1 ) {
-                            buffer.flip();
-                            if (size + buffer.limit() > range.getLength()) {
-                                buffer.limit((int) (range.getLength() - size));
-                            }
-                            size += writableChannel.write(buffer);
-                            if (size >= range.getLength()) {
-                                break;
-                            }
-                            buffer.clear();
-                        }
-                    }
-
-                    writableChannel.write(NL);
-                    NL.clear();
-                    writableChannel.write(wrap(("--" + ranges.get(0).getBoundary() + "--").getBytes(UTF_8)));
-                    writableChannel.write(NL);
+                for (final Range range : ranges) {
+                    os.println();
+                    os.println("--" + range.getBoundary());
+                    os.println("Content-Type: " + contentType);
+                    os.println("Content-Range: bytes " + range.getStart() + "-" + range.getEnd() + "/" + index.getLength());
+                    os.println();
+                    write(index, range.getStart(), range.getLength(), os);
                 }
+                os.println();
+                os.println("--" + ranges.get(0).getBoundary() + "--");
             }
         }
     }
 
-    protected void copy(final InputStream  input,
-                        final long         totalSize,
-                        final OutputStream output,
-                        final long         start,
-                        final long         length) throws IOException {
-        byte[] buffer = new byte[1024 * 16];
-        int read;
-        if (totalSize == length) {
-            while ((read = input.read(buffer)) > 0) {
-                output.write(buffer, 0, read);
+    protected SegmentIndex<T> createSegmentIndex(final Resource<T> resource) throws IOException, SQLException {
+        final List<T> objects;
+        final long[]  sizes;
+        if (resource.isDynamicLargeObject()) {
+            objects = objectService.listDynamicLargeObject(resource.getContainer(), resource.getObject());
+            sizes   = new long[objects.size()];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = objectService.getSize(objects.get(i));
+            }
+        } else if (resource.isStaticLargeObject()) {
+            final List<Segment<T>> segments = resource.getSegments();
+            objects = new ArrayList<>(segments.size());
+            sizes   = new long[segments.size()];
+            for (int i = 0; i < sizes.length; i++) {
+                objects.add(segments.get(i).getObject());
+                sizes[i] = segments.get(i).getSize();
             }
         } else {
-            input.skip(start);
-            long toRead = length;
-
-            while ((read = input.read(buffer)) > 0) {
-                if ((toRead -= read) > 0) {
-                    output.write(buffer, 0, read);
-                } else {
-                    output.write(buffer, 0, (int) toRead + read);
-                    break;
-                }
+            objects = singletonList(resource.getObject());
+            sizes   = new long[] { resource.getLength() };
+        }
+        return new SegmentIndex<>(objects, sizes);
+    }
+
+    /**
+     * Writes the range of the (large) object, starting from the segment that contains the range start.
+     */
+    protected void write(
+                    final SegmentIndex<T> index,
+                    final long            start,
+                    final long            length,
+                    final OutputStream    output) throws IOException, SQLException {
+        long position  = start;
+        long remaining = length;
+        for (int i = index.indexOf(start); i >= 0 && i < index.size() && remaining > 0; i++) {
+            final long offset = position - index.getOffset(i);
+            final long count  = min(index.getSize(i) - offset, remaining);
+            if (count <= 0) {
+                continue;
+            }
+            try (FileChannel channel = (FileChannel) objectService.getReadableChannel(index.getObject(i))) {
+                transfer(channel, offset, count, output);
+            }
+            position  += count;
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Writes the file region with sendfile when the response belongs to Undertow,
+     * otherwise copies it through the output stream.
+     */
+    protected void transfer(final FileChannel  channel,
+                            final long         position,
+                            final long         count,
+                            final OutputStream output) throws IOException {
+        if (FileTransfer.transfer(output, channel, position, count)) {
+            return;
+        }
+        final WritableByteChannel writableChannel = newChannel(output);
+        long written = 0L;
+        while (written < count) {
+            final long transferred = channel.transferTo(position + written, count - written, writableChannel);
+            if (transferred <= 0) {
+                break;
             }
+            written += transferred;
         }
     }
 
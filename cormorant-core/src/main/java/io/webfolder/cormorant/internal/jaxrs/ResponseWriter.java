@@ -33,18 +33,22 @@ import static javax.ws.rs.core.HttpHeaders.CONTENT_TYPE;
 import static javax.ws.rs.core.HttpHeaders.USER_AGENT;
 import static javax.ws.rs.core.HttpHeaders.VARY;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.StringJoiner;
 
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.WebApplicationException;
@@ -90,6 +94,10 @@ public class ResponseWriter implements MessageBodyWriter, Util {
 
     private static final String  TRANSFER_ENCODING           = "Transfer-Encoding";
 
+    private static final int     BUFFER_SIZE                 = 8 * 1024;
+
+    private static final int     PAGE_SIZE                   = 1000;
+
     @Context
     private UriInfo uriInfo;
 
@@ -131,9 +139,10 @@ public class ResponseWriter implements MessageBodyWriter, Util {
             responseHeaders.remove(CONTENT_TYPE);
         }
 
-        String contentType = textPlain;
-        Object response    = retValue;
-        String content     = null;
+        String   contentType = textPlain;
+        Object   response    = retValue;
+        String   content     = null;
+        Resource listing     = null;
 
         final MultivaluedMap<String, String> qparams = uriInfo.getQueryParameters();
 
@@ -210,57 +219,7 @@ public class ResponseWriter implements MessageBodyWriter, Util {
 
             response = cgr.getResponse();
 
-            String seperator = "";
-            String prefix    = "";
-            String suffix    = "";
-
-            final String container = uriInfo.getPathParameters(false).getFirst("container");
-
-            switch (contentFormat) {
-                case json:
-                    seperator   = ",";
-                    prefix      = "[";
-                    suffix      = "]";
-                    contentType = applicationJson;
-                break;
-                case xml:
-                    seperator   = "\r\n";
-                    prefix      = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n<container name=\"" + container + "\">";
-                    contentType = applicationXml;
-                break;
-                default:
-                    contentType = textPlain;
-                    seperator   = "\r\n";
-                break;
-            }
-
-            final StringJoiner joiner = new StringJoiner(seperator, prefix, suffix);
-
-            final String userAgent = requestHeaders.getHeaderString(USER_AGENT);
-            // ncw/swift/blob/master/swift_test.go#TestObjectsDirectory fails if dir name ends with /
-            // @see https://github.com/ncw/swift/blob/master/swift_test.go#L1355
-            final Boolean appendForwardSlash = "goswift/1.0".equals(userAgent) ? FALSE : TRUE;
-
-            Resource stream = cgr.getBody();
-            for (Object next : stream) {
-                String json;
-                try {
-                    json = stream.convert(next, contentFormat, appendForwardSlash);
-                } catch (SQLException e) {
-                    throw new CormorantException(e);
-                }
-                if ( json != null ) {
-                    joiner.add(json);
-                }
-            }
-
-            content = joiner.toString();
-
-            if (ContentFormat.xml.equals(contentFormat)) {
-                content = content + "</container>";
-            }
-
-            content = content.trim();
+            listing = cgr.getBody();
 
             cgr.getResponse().setContentType(contentType);
 
@@ -297,7 +256,9 @@ public class ResponseWriter implements MessageBodyWriter, Util {
 
         responseHeaders.add(VARY, "X-Auth-Token");
 
-        if ( content != null && ! content.trim().isEmpty() ) {
+        if ( listing != null ) {
+            writeListing(listing, contentFormat, entityStream);
+        } else if ( content != null && ! content.trim().isEmpty() ) {
             try (OutputStream os = entityStream) {
                 os.write(content.getBytes(UTF_8));
                 os.flush();
@@ -305,6 +266,74 @@ public class ResponseWriter implements MessageBodyWriter, Util {
         }
     }
 
+    /**
+     * Writes the container listing entry by entry as the resource iterator yields them.
+     */
+    protected void writeListing(
+                        final Resource      listing,
+                        final ContentFormat contentFormat,
+                        final OutputStream  entityStream) throws IOException {
+        final String seperator;
+        final String prefix;
+        final String suffix;
+
+        final String container = uriInfo.getPathParameters(false).getFirst("container");
+
+        switch (contentFormat) {
+            case json:
+                seperator = ",";
+                prefix    = "[";
+                suffix    = "]";
+            break;
+            case xml:
+                seperator = "\r\n";
+                prefix    = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n<container name=\"" + container + "\">";
+                suffix    = "</container>";
+            break;
+            default:
+                // each plain entry is terminated with a new line
+                seperator = "";
+                prefix    = "";
+                suffix    = "";
+            break;
+        }
+
+        final String userAgent = requestHeaders.getHeaderString(USER_AGENT);
+        // ncw/swift/blob/master/swift_test.go#TestObjectsDirectory fails if dir name ends with /
+        // @see https://github.com/ncw/swift/blob/master/swift_test.go#L1355
+        final Boolean appendForwardSlash = "goswift/1.0".equals(userAgent) ? FALSE : TRUE;
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(entityStream, UTF_8), BUFFER_SIZE)) {
+            writer.write(prefix);
+            boolean first = true;
+            final List<Object> page = new ArrayList<>(PAGE_SIZE);
+            final Iterator<?> iterator = listing.iterator();
+            while (iterator.hasNext()) {
+                page.clear();
+                while ( iterator.hasNext() && page.size() < PAGE_SIZE ) {
+                    page.add(iterator.next());
+                }
+                try {
+                    listing.prefetch(page, contentFormat);
+                    for (Object next : page) {
+                        final String entry = listing.convert(next, contentFormat, appendForwardSlash);
+                        if ( entry == null ) {
+                            continue;
+                        }
+                        if ( ! first ) {
+                            writer.write(seperator);
+                        }
+                        writer.write(entry);
+                        first = false;
+                    }
+                } catch (SQLException e) {
+                    throw new CormorantException(e);
+                }
+            }
+            writer.write(suffix);
+        }
+    }
+
     protected Map<Class<?>, Set<Field>> getHeaderMappings() {
         final Map<Class<?>, Set<Field>> mappings = new HashMap<>();
         mappings.put(AccountGetResponse.class         , getHeaderNames(AccountGetResponse.class));
@@ -0,0 +1,83 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.internal.jaxrs;
+
+import static java.util.Arrays.binarySearch;
+
+import java.util.List;
+
+/**
+ * Cumulative offsets of large object segments.
+ * 
+ * Finds the segment that contains a position of the large object with binary search,
+ * so a range request can start reading from the right segment and offset.
+ */
+class SegmentIndex<T> {
+
+    private final List<T> objects;
+
+    private final long[]  offsets;
+
+    SegmentIndex(final List<T> objects, final long[] sizes) {
+        this.objects = objects;
+        this.offsets = new long[sizes.length + 1];
+        for (int i = 0; i < sizes.length; i++) {
+            offsets[i + 1] = offsets[i] + sizes[i];
+        }
+    }
+
+    /**
+     * Returns the index of the segment that contains the position.
+     * Empty segments that start at the same offset are skipped.
+     */
+    public int indexOf(final long position) {
+        int index = binarySearch(offsets, 0, objects.size(), position);
+        if (index < 0) {
+            return - index - 2;
+        }
+        while (index + 1 < objects.size() && offsets[index + 1] == position) {
+            index++;
+        }
+        return index;
+    }
+
+    public T getObject(final int index) {
+        return objects.get(index);
+    }
+
+    public long getOffset(final int index) {
+        return offsets[index];
+    }
+
+    public long getSize(final int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    public int size() {
+        return objects.size();
+    }
+
+    public long getLength() {
+        return offsets[objects.size()];
+    }
+}
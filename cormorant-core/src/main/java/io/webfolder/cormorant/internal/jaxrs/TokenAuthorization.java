@@ -0,0 +1,74 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.internal.jaxrs;
+
+import static java.time.Instant.now;
+
+import java.security.Principal;
+import java.util.Map;
+
+import io.webfolder.cormorant.api.service.KeystoneService;
+
+/**
+ * Applies the token checks of {@link SecurityFilter} outside of the JAX-RS filter chain,
+ * for handlers which have to decide before the request reaches the resource.
+ */
+public class TokenAuthorization {
+
+    private final Map<String, Principal> tokens;
+
+    private final KeystoneService        keystoneService;
+
+    private final String                 accountName;
+
+    public TokenAuthorization(
+                final Map<String, Principal> tokens,
+                final KeystoneService        keystoneService,
+                final String                 accountName) {
+        this.tokens          = tokens;
+        this.keystoneService = keystoneService;
+        this.accountName     = accountName;
+    }
+
+    /**
+     * @return <code>true</code> if the token exists and has not expired, its user has the permission
+     *         for the method and the account is the account of the object store
+     */
+    public boolean isAuthorized(
+                        final String authToken,
+                        final String permission,
+                        final String method,
+                        final String account) {
+        if ( authToken == null || accountName == null || ! accountName.equals(account) ) {
+            return false;
+        }
+        final Principal principal = tokens.get(authToken);
+        if ( ! (principal instanceof CormorantPrincipal) ) {
+            return false;
+        }
+        if (now().isAfter(((CormorantPrincipal) principal).getExpires())) {
+            return false;
+        }
+        return keystoneService.hasPermission(principal.getName(), permission, method);
+    }
+}
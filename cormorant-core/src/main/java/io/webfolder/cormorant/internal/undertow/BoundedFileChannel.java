@@ -0,0 +1,184 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.internal.undertow;
+
+import static java.lang.Math.min;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Read-only view of a {@link FileChannel} that ends at the given limit.
+ * 
+ * Positions are not shifted, only the size is capped, so the transfer methods
+ * still delegate to the underlying channel and can use sendfile.
+ */
+class BoundedFileChannel extends FileChannel {
+
+    private final FileChannel channel;
+
+    private final long        limit;
+
+    BoundedFileChannel(final FileChannel channel, final long limit) {
+        this.channel = channel;
+        this.limit   = limit;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        final long remaining = limit - channel.position();
+        if (remaining <= 0) {
+            return -1;
+        }
+        if (dst.remaining() <= remaining) {
+            return channel.read(dst);
+        }
+        final ByteBuffer buffer = dst.duplicate();
+        buffer.limit(dst.position() + (int) remaining);
+        final int read = channel.read(buffer);
+        if (read > 0) {
+            dst.position(dst.position() + read);
+        }
+        return read;
+    }
+
+    @Override
+    public long read(final ByteBuffer[] dsts, final int offset, final int length) throws IOException {
+        long total = 0L;
+        for (int i = offset; i < offset + length; i++) {
+            if ( ! dsts[i].hasRemaining() ) {
+                continue;
+            }
+            final int read = read(dsts[i]);
+            if (read < 0) {
+                return total == 0L ? -1L : total;
+            }
+            total += read;
+            if (dsts[i].hasRemaining()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst, final long position) throws IOException {
+        final long remaining = limit - position;
+        if (remaining <= 0) {
+            return -1;
+        }
+        if (dst.remaining() <= remaining) {
+            return channel.read(dst, position);
+        }
+        final ByteBuffer buffer = dst.duplicate();
+        buffer.limit(dst.position() + (int) remaining);
+        final int read = channel.read(buffer, position);
+        if (read > 0) {
+            dst.position(dst.position() + read);
+        }
+        return read;
+    }
+
+    @Override
+    public long transferTo(final long position, final long count, final WritableByteChannel target) throws IOException {
+        if (position >= limit) {
+            return 0L;
+        }
+        return channel.transferTo(position, min(count, limit - position), target);
+    }
+
+    @Override
+    public long position() throws IOException {
+        return channel.position();
+    }
+
+    @Override
+    public FileChannel position(final long newPosition) throws IOException {
+        channel.position(newPosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return min(channel.size(), limit);
+    }
+
+    @Override
+    public MappedByteBuffer map(final MapMode mode, final long position, final long size) throws IOException {
+        if (position + size > limit) {
+            throw new IllegalArgumentException("Mapped region exceeds the channel limit.");
+        }
+        return channel.map(mode, position, size);
+    }
+
+    @Override
+    public void force(final boolean metaData) throws IOException {
+        channel.force(metaData);
+    }
+
+    @Override
+    public FileLock lock(final long position, final long size, final boolean shared) throws IOException {
+        return channel.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(final long position, final long size, final boolean shared) throws IOException {
+        return channel.tryLock(position, size, shared);
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public int write(final ByteBuffer src, final long position) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public FileChannel truncate(final long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long transferFrom(final ReadableByteChannel src, final long position, final long count) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        // the underlying channel is owned and closed by the caller
+    }
+}
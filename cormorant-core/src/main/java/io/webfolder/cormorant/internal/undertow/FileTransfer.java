@@ -0,0 +1,71 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.internal.undertow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+import io.undertow.servlet.spec.ServletOutputStreamImpl;
+
+/**
+ * Hands file regions to the Undertow response channel so the kernel
+ * copies the data to the socket (sendfile) instead of the JVM.
+ */
+public final class FileTransfer {
+
+    private static final boolean UNDERTOW = isUndertow();
+
+    private FileTransfer() {
+    }
+
+    /**
+     * Writes {@code count} bytes of the channel, starting from {@code position}.
+     *
+     * @return {@code false} if the output stream does not belong to Undertow
+     *         and nothing is written.
+     */
+    public static boolean transfer(
+                            final OutputStream os,
+                            final FileChannel  channel,
+                            final long         position,
+                            final long         count) throws IOException {
+        if ( ! UNDERTOW || ! ( os instanceof ServletOutputStreamImpl ) ) {
+            return false;
+        }
+        if (count > 0) {
+            channel.position(position);
+            ((ServletOutputStreamImpl) os).transferFrom(new BoundedFileChannel(channel, position + count));
+        }
+        return true;
+    }
+
+    private static boolean isUndertow() {
+        try {
+            Class.forName("io.undertow.servlet.spec.ServletOutputStreamImpl", false, FileTransfer.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.internal.undertow;
+
+import io.undertow.servlet.handlers.ServletRequestContext;
+import io.webfolder.cormorant.api.fs.TempObject;
+
+/**
+ * Request body which is written to a temp object before the request is dispatched to a worker.
+ */
+public class StagedObject<T> {
+
+    private static final boolean UNDERTOW = isUndertow();
+
+    private final TempObject<T> tempObject;
+
+    private final String        checksum  ;
+
+    StagedObject(final TempObject<T> tempObject, final String checksum) {
+        this.tempObject = tempObject;
+        this.checksum   = checksum  ;
+    }
+
+    /**
+     * Takes the staged body of the current request.
+     * The caller owns the temp object afterwards, it is not deleted when the exchange completes.
+     *
+     * @return {@code null} if the body of the current request is not staged
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> StagedObject<T> take() {
+        if ( ! UNDERTOW ) {
+            return null;
+        }
+        final ServletRequestContext context = ServletRequestContext.current();
+        if (context == null) {
+            return null;
+        }
+        return context.getExchange().removeAttachment(UploadHandler.STAGED_OBJECT);
+    }
+
+    public TempObject<T> getTempObject() {
+        return tempObject;
+    }
+
+    /**
+     * @return MD5 checksum of the request body, {@code null} if the body was transferred without passing through the JVM
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    private static boolean isUndertow() {
+        try {
+            Class.forName("io.undertow.servlet.handlers.ServletRequestContext", false, StagedObject.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,427 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.internal.undertow;
+
+import static io.undertow.server.Connectors.executeRootHandler;
+import static io.undertow.server.Connectors.resetRequestChannel;
+import static io.undertow.util.Headers.CONTENT_TYPE;
+import static io.undertow.util.Headers.TRANSFER_ENCODING;
+import static io.undertow.util.HttpString.tryFromString;
+import static io.undertow.util.Methods.PUT;
+import static io.undertow.util.StatusCodes.INTERNAL_SERVER_ERROR;
+import static io.undertow.util.StatusCodes.REQUEST_ENTITY_TOO_LARGE;
+import static io.webfolder.cormorant.api.metadata.MetadataServiceFactory.MANIFEST_EXTENSION;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+import static java.security.MessageDigest.getInstance;
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.xnio.IoUtils.safeClose;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.xnio.ChannelListener;
+import org.xnio.channels.StreamSourceChannel;
+
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.HttpString;
+import io.webfolder.cormorant.api.exception.CormorantException;
+import io.webfolder.cormorant.api.fs.TempObject;
+import io.webfolder.cormorant.api.service.AccountService;
+import io.webfolder.cormorant.api.service.ContainerService;
+import io.webfolder.cormorant.api.service.ObjectService;
+import io.webfolder.cormorant.internal.jaxrs.ContainerQuota;
+import io.webfolder.cormorant.internal.jaxrs.TokenAuthorization;
+
+/**
+ * Writes the body of <code>PUT /v1/{account}/{container}/{object}</code> to a temp object
+ * from the read listener of the request channel, on the IO thread.
+ * 
+ * The token and the container are verified on the IO thread, the quota lookups, the space admission
+ * and the temp object are made on a worker, which resumes the reads of the request channel.
+ * The request is passed to the next handler only after the last byte is received,
+ * so slow clients do not hold a worker thread during the transfer.
+ * Copy, manifest and directory requests, requests without a valid token and
+ * requests which are rejected anyway, e.g. over quota, are passed to the next handler untouched.
+ * 
+ * When <code>zeroCopy</code> is enabled and the request has a <code>Content-Length</code>,
+ * the request channel transfers the body into the file channel of the temp object
+ * (splice-style where XNIO supports it) and the checksum is calculated by the controller afterwards.
+ */
+public class UploadHandler<T> implements HttpHandler {
+
+    @SuppressWarnings("rawtypes")
+    static final AttachmentKey<StagedObject> STAGED_OBJECT    = AttachmentKey.create(StagedObject.class);
+
+    private static final String     OBJECT_PATH_PREFIX    = "/v1/";
+
+    private static final String     DIRECTORY             = "application/directory";
+
+    private static final String     MULTIPART_MANIFEST    = "multipart-manifest";
+
+    private static final String     MD5_CHECKSUM          = "MD5";
+
+    private static final HttpString X_COPY_FROM           = tryFromString("X-Copy-From");
+
+    private static final HttpString X_AUTH_TOKEN          = tryFromString("X-Auth-Token");
+
+    private static final String     OBJECT_PERMISSION     = "cormorant-object";
+
+    private static final long       MAX_UPLOAD_SIZE       = 5L * 1024L * 1024L * 1024L; //  5 GB
+
+    private final Logger log = getLogger(UploadHandler.class);
+
+    private final HttpHandler         next            ;
+
+    private final TokenAuthorization  authorization   ;
+
+    private final ContainerQuota<T>   quota           ;
+
+    private final ContainerService<T> containerService;
+
+    private final ObjectService<T>    objectService   ;
+
+    private final boolean             zeroCopy        ;
+
+    public UploadHandler(
+                    final HttpHandler         next            ,
+                    final TokenAuthorization  authorization   ,
+                    final AccountService      accountService  ,
+                    final ContainerService<T> containerService,
+                    final ObjectService<T>    objectService   ) {
+        this(next, authorization, accountService, containerService, objectService, false);
+    }
+
+    public UploadHandler(
+                    final HttpHandler         next            ,
+                    final TokenAuthorization  authorization   ,
+                    final AccountService      accountService  ,
+                    final ContainerService<T> containerService,
+                    final ObjectService<T>    objectService   ,
+                    final boolean             zeroCopy        ) {
+        this.next             = next            ;
+        this.authorization    = authorization   ;
+        this.quota            = new ContainerQuota<>(accountService, containerService);
+        this.containerService = containerService;
+        this.objectService    = objectService   ;
+        this.zeroCopy         = zeroCopy        ;
+    }
+
+    @Override
+    public void handleRequest(final HttpServerExchange exchange) throws Exception {
+        final Upload upload = isUpload(exchange) ? createUpload(exchange) : null;
+        if (upload == null) {
+            next.handleRequest(exchange);
+            return;
+        }
+        // the metadata store and the file store may block, the IO thread serves other connections meanwhile
+        exchange.dispatch(worker -> {
+            if ( ! upload.open() ) {
+                next.handleRequest(worker);
+                return;
+            }
+            // a staged body which is not taken by the controller is not left behind
+            worker.addExchangeCompleteListener((completedExchange, nextListener) -> {
+                try {
+                    if (completedExchange.removeAttachment(STAGED_OBJECT) != null) {
+                        upload.delete();
+                    }
+                } finally {
+                    nextListener.proceed();
+                }
+            });
+            upload.start();
+        });
+    }
+
+    protected boolean isUpload(final HttpServerExchange exchange) {
+        if ( ! PUT.equals(exchange.getRequestMethod()) ) {
+            return false;
+        }
+        final HeaderMap headers       = exchange.getRequestHeaders();
+        final long      contentLength = exchange.getRequestContentLength();
+        if ( contentLength == 0 ||
+                contentLength > MAX_UPLOAD_SIZE ||
+                ( contentLength < 0 && ! headers.contains(TRANSFER_ENCODING) ) ) {
+            return false;
+        }
+        if ( headers.contains(X_COPY_FROM) ||
+                DIRECTORY.equalsIgnoreCase(headers.getFirst(CONTENT_TYPE)) ||
+                exchange.getQueryParameters().containsKey(MULTIPART_MANIFEST) ) {
+            return false;
+        }
+        // request bodies of anonymous clients are never written to disk, the token is verified by createUpload
+        return headers.contains(X_AUTH_TOKEN);
+    }
+
+    /**
+     * Verifies the request without blocking, the temp object is created by {@link Upload#open()}.
+     */
+    protected Upload createUpload(final HttpServerExchange exchange) throws IOException, SQLException {
+        final String path = exchange.getRelativePath();
+        if ( path == null || ! path.startsWith(OBJECT_PATH_PREFIX) ) {
+            return null;
+        }
+        final int accountStart   = OBJECT_PATH_PREFIX.length();
+        final int accountEnd     = path.indexOf('/', accountStart);
+        final int containerEnd   = accountEnd > accountStart ? path.indexOf('/', accountEnd + 1) : -1;
+        if ( containerEnd <= accountEnd + 1 || containerEnd == path.length() - 1 ) {
+            return null;
+        }
+        final String accountName   = path.substring(accountStart, accountEnd);
+        final String containerName = path.substring(accountEnd + 1, containerEnd);
+        final String objectPath    = path.substring(containerEnd + 1);
+        // expired tokens, users without the object permission and other accounts are rejected by the controller
+        if ( ! authorization.isAuthorized(exchange.getRequestHeaders().getFirst(X_AUTH_TOKEN),
+                                                    OBJECT_PERMISSION, PUT.toString(), accountName) ) {
+            return null;
+        }
+        if (objectPath.endsWith(MANIFEST_EXTENSION) || ! containerService.contains(accountName, containerName)) {
+            return null;
+        }
+        final T container = containerService.getContainer(accountName, containerName);
+        if ( container == null || ! objectService.isValidPath(container, objectPath) ) {
+            return null;
+        }
+        return new Upload(exchange, accountName, containerName, container, exchange.getRequestContentLength());
+    }
+
+    protected class Upload implements ChannelListener<StreamSourceChannel> {
+
+        private final HttpServerExchange  exchange     ;
+
+        private final String              accountName  ;
+
+        private final String              containerName;
+
+        private final T                   container    ;
+
+        private final long                contentLength;
+
+        private TempObject<T>             tempObject   ;
+
+        private WritableByteChannel       channel      ;
+
+        private FileChannel               fileChannel  ;
+
+        private long                      maxSize      ;
+
+        private Closeable                 admission    ;
+
+        private MessageDigest             digest       ;
+
+        private long size;
+
+        Upload(
+                final HttpServerExchange  exchange     ,
+                final String              accountName  ,
+                final String              containerName,
+                final T                   container    ,
+                final long                contentLength) {
+            this.exchange      = exchange     ;
+            this.accountName   = accountName  ;
+            this.containerName = containerName;
+            this.container     = container    ;
+            this.contentLength = contentLength;
+        }
+
+        /**
+         * Checks the quota and the free space of the volume and creates the temp object, called on a worker thread.
+         *
+         * @return {@code false} if the request is rejected anyway, the controller sends the error before the body is read
+         */
+        boolean open() throws IOException, SQLException {
+            try {
+                quota.check(contentLength > 0 ? contentLength : null, accountName, containerName);
+                // the size of a chunked upload is unknown, the quota is enforced while the body is received
+                maxSize     = contentLength < 0 ?
+                                        min(MAX_UPLOAD_SIZE, quota.getBytesLeft(accountName, containerName)) : MAX_UPLOAD_SIZE;
+                admission = contentLength > 0 ? objectService.admitUpload(container, contentLength) : null;
+            } catch (CormorantException e) {
+                return false;
+            }
+            try {
+                tempObject = objectService.createTempObject(accountName, container);
+            } catch (IOException | SQLException e) {
+                safeClose(admission);
+                throw e;
+            }
+            try {
+                channel = tempObject.getWritableByteChannel();
+            } catch (IOException | SQLException e) {
+                safeClose(admission);
+                objectService.deleteTempObject(accountName, container, tempObject.toObject());
+                throw e;
+            }
+            fileChannel = zeroCopy && contentLength > 0 && channel instanceof FileChannel ?
+                                                    (FileChannel) channel : null;
+            try {
+                // zero copy transfers are never seen by the JVM, the controller calculates the checksum from the file
+                digest = fileChannel == null ? getInstance(MD5_CHECKSUM) : null;
+            } catch (NoSuchAlgorithmException e) {
+                throw new CormorantException(e);
+            }
+            return true;
+        }
+
+        void start() throws Exception {
+            final StreamSourceChannel requestChannel = exchange.getRequestChannel();
+            if ( ! transfer(requestChannel) ) {
+                // waits for the next chunk of the body, the read listener runs on the IO thread once the worker returns
+                requestChannel.getReadSetter().set(this);
+                requestChannel.resumeReads();
+            } else if (stage()) {
+                next.handleRequest(exchange);
+            }
+        }
+
+        @Override
+        public void handleEvent(final StreamSourceChannel requestChannel) {
+            if ( ! transfer(requestChannel) ) {
+                return;
+            }
+            requestChannel.getReadSetter().set(null);
+            requestChannel.suspendReads();
+            if (stage()) {
+                executeRootHandler(next, exchange);
+            }
+        }
+
+        /**
+         * Writes the available bytes of the request body to the temp object.
+         *
+         * @return {@code true} if the request body is completely read or the upload is aborted
+         */
+        protected boolean transfer(final StreamSourceChannel requestChannel) {
+            try (final PooledByteBuffer pooled = exchange.getConnection().getByteBufferPool().allocate()) {
+                final ByteBuffer buffer = pooled.getBuffer();
+                while (true) {
+                    if (fileChannel != null) {
+                        if (size == contentLength) {
+                            return true;
+                        }
+                        final long transferred = requestChannel.transferTo(size, contentLength - size, fileChannel);
+                        if (transferred > 0) {
+                            size += transferred;
+                            continue;
+                        }
+                        // nothing transferred, read() tells apart an idle and a closed connection
+                    }
+                    buffer.clear();
+                    final int read = requestChannel.read(buffer);
+                    if (read == 0) {
+                        return false;
+                    }
+                    if (read < 0) {
+                        return true;
+                    }
+                    // the temp object is deleted as soon as the body exceeds the upload size or the quota
+                    if (size + read > maxSize) {
+                        abort(REQUEST_ENTITY_TOO_LARGE, null);
+                        return true;
+                    }
+                    buffer.flip();
+                    if (digest != null) {
+                        digest.update(buffer.duplicate());
+                    }
+                    if (fileChannel != null) {
+                        // transferTo does not move the position of the file channel
+                        fileChannel.position(size);
+                    }
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    size += read;
+                }
+            } catch (IOException e) {
+                abort(INTERNAL_SERVER_ERROR, e);
+                return true;
+            }
+        }
+
+        /**
+         * Attaches the temp object to the exchange, the controller reads an empty request body afterwards.
+         *
+         * @return {@code false} if the upload was aborted
+         */
+        protected boolean stage() {
+            if ( ! channel.isOpen() ) {
+                return false;
+            }
+            // the written bytes are accounted by the volume from now on
+            safeClose(admission);
+            try {
+                // an anonymous (O_TMPFILE) temp object is linked through the descriptor of its channel
+                tempObject.toObject();
+                channel.close();
+            } catch (IOException e) {
+                abort(INTERNAL_SERVER_ERROR, e);
+                return false;
+            }
+            final String checksum = digest != null ? format("%032x", new BigInteger(1, digest.digest())) : null;
+            exchange.putAttachment(STAGED_OBJECT, new StagedObject<>(tempObject, checksum));
+            resetRequestChannel(exchange);
+            return true;
+        }
+
+        protected void abort(final int statusCode, final IOException e) {
+            if (e != null) {
+                log.debug("Unable to receive object upload. " + e.getMessage(), e);
+            }
+            // named before the channel is closed, see stage()
+            tempObject.toObject();
+            safeClose(channel);
+            safeClose(admission);
+            delete();
+            if ( ! exchange.isResponseStarted() ) {
+                exchange.setStatusCode(statusCode);
+            }
+            // the rest of the request body is not drained
+            exchange.setPersistent(false);
+            exchange.endExchange();
+        }
+
+        /**
+         * Deletes the temp object, its channel is closed by {@link #stage()} or {@link #abort} after the object is named.
+         */
+        protected void delete() {
+            try {
+                objectService.deleteTempObject(accountName, container, tempObject.toObject());
+            } catch (IOException | SQLException e) {
+                log.warn("Unable to delete temp object [" + tempObject.toObject() + "].", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api;
+
+import static java.lang.reflect.Proxy.newProxyInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPooledDataSource {
+
+    private final AtomicInteger opened = new AtomicInteger();
+
+    private final AtomicInteger closed = new AtomicInteger();
+
+    private PooledDataSource ds;
+
+    @Before
+    public void init() {
+        ds = new PooledDataSource(dataSource(), 2, 8);
+    }
+
+    @Test
+    public void t01StatementConnection() throws SQLException {
+        final Connection conn = ds.getConnection();
+        try (PreparedStatement statement = conn.prepareStatement("SELECT 1")) {
+            assertSame(conn, statement.getConnection());
+        }
+        conn.close();
+        assertEquals(0, closed.get());
+        // the connection is reused
+        ds.getConnection().close();
+        assertEquals(1, opened.get());
+    }
+
+    @Test
+    public void t02Close() throws SQLException {
+        final Connection first  = ds.getConnection();
+        final Connection second = ds.getConnection();
+        first.close();
+        ds.close();
+        assertEquals(1, closed.get());
+        // closed once it is released
+        second.close();
+        assertEquals(2, closed.get());
+        try {
+            ds.getConnection();
+            fail();
+        } catch (SQLException e) {
+            assertEquals("Connection pool is closed.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void t03Reset() throws SQLException {
+        final Connection conn = ds.getConnection();
+        conn.setAutoCommit(false);
+        conn.close();
+        assertTrue(conn.isClosed());
+        final Connection next = ds.getConnection();
+        assertFalse(next.isClosed());
+        next.close();
+        assertEquals(1, opened.get());
+    }
+
+    protected DataSource dataSource() {
+        return (DataSource) newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataSource.class }, (proxy, method, args) -> {
+            if ("getConnection".equals(method.getName())) {
+                opened.incrementAndGet();
+                return connection();
+            }
+            return null;
+        });
+    }
+
+    protected Connection connection() {
+        final boolean[] state = { false, true };
+        return (Connection) newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "close":
+                    state[0] = true;
+                    closed.incrementAndGet();
+                    return null;
+                case "isClosed"        : return state[0];
+                case "getAutoCommit"   : return state[1];
+                case "setAutoCommit"   :
+                    state[1] = (Boolean) args[0];
+                    return null;
+                case "prepareStatement": return statement((Connection) proxy);
+                default                : return null;
+            }
+        });
+    }
+
+    protected PreparedStatement statement(final Connection conn) {
+        final boolean[] state = { false };
+        return (PreparedStatement) newProxyInstance(getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "close":
+                    state[0] = true;
+                    return null;
+                case "isClosed"     : return state[0];
+                case "getConnection": return conn;
+                default             : return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.fs;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createTempDirectory;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestContainerRegistry {
+
+    private Path directory;
+
+    private Path root;
+
+    @Before
+    public void init() throws IOException {
+        directory = createTempDirectory("cormorant-registry");
+        root      = directory.resolve("objects");
+        createDirectories(root.resolve("mycontainer"));
+    }
+
+    @After
+    public void destroy() throws IOException {
+        delete(directory);
+    }
+
+    @Test
+    public void t01RecreatedRoot() throws IOException, InterruptedException {
+        try (ContainerRegistry registry = new ContainerRegistry(root)) {
+            assertTrue(registry.contains("mycontainer"));
+            delete(root);
+            createDirectories(root.resolve("other"));
+            // the watch key of the removed root is invalid, the new root is watched and reloaded
+            assertTrue(await(() -> registry.contains("other") && ! registry.contains("mycontainer")));
+            createDirectories(root.resolve("third"));
+            assertTrue(await(() -> registry.contains("third")));
+        }
+    }
+
+    @Test
+    public void t02Unwatched() throws IOException, InterruptedException {
+        try (ContainerRegistry registry = new ContainerRegistry(root, false)) {
+            createDirectories(root.resolve("other"));
+            assertFalse(await(() -> registry.contains("other")));
+            registry.add("other");
+            assertTrue(registry.contains("other"));
+        }
+    }
+
+    protected boolean await(final BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    protected void delete(final Path path) throws IOException {
+        try (Stream<Path> stream = Files.walk(path)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.fs;
+
+import static io.webfolder.cormorant.api.fs.Durability.GroupCommit;
+import static io.webfolder.cormorant.api.fs.Durability.Sync;
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.write;
+import static java.util.Arrays.asList;
+import static java.util.Collections.frequency;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.webfolder.cormorant.api.exception.CormorantException;
+
+public class TestFileSyncer {
+
+    private Path directory;
+
+    private final List<Path> forced = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void init() throws IOException {
+        directory = createTempDirectory("cormorant-syncer");
+    }
+
+    @After
+    public void destroy() throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void t01CreateDirectories() throws IOException {
+        final FileSyncer syncer = new RecordingSyncer(Sync);
+        final Path       nested = directory.resolve("a").resolve("b").resolve("c");
+        syncer.createDirectories(directory.resolve("a"));
+        forced.clear();
+        assertEquals(nested, syncer.createDirectories(nested));
+        assertTrue(isDirectory(nested));
+        // the new directories and the directories which hold their entries
+        assertEquals(new HashSet<>(asList(directory.resolve("a"), directory.resolve("a").resolve("b"), nested)),
+                            new HashSet<>(forced));
+        forced.clear();
+        syncer.createDirectories(nested);
+        assertTrue(forced.isEmpty());
+        syncer.close();
+    }
+
+    @Test
+    public void t02SameFileForcedOncePerBatch() throws Exception {
+        final Path           first   = directory.resolve("first");
+        final Path           file    = directory.resolve("journal");
+        final CountDownLatch queued  = new CountDownLatch(9);
+        final CountDownLatch release = new CountDownLatch(1);
+        write(first, new byte[] { 1 });
+        write(file, new byte[] { 1 });
+        final FileSyncer syncer = new RecordingSyncer(GroupCommit) {
+
+            @Override
+            protected void force(final Path next) throws IOException {
+                // holds the first batch until the other requests are queued
+                if (next.endsWith("first")) {
+                    awaitLatch(release);
+                }
+                super.force(next);
+            }
+
+            @Override
+            protected void await(final CompletableFuture<Void> future) throws IOException {
+                queued.countDown();
+                super.await(future);
+            }
+        };
+        final ExecutorService executor = Executors.newFixedThreadPool(9);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> { syncer.sync(first); return null; }));
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> { syncer.sync(file); return null; }));
+            }
+            awaitLatch(queued);
+            release.countDown();
+            for (Future<?> next : futures) {
+                next.get(10, SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+            syncer.close();
+        }
+        assertEquals(1, frequency(forced, file));
+    }
+
+    @Test
+    public void t03CloseCompletesQueuedRequests() throws Exception {
+        final FileSyncer      syncer   = new RecordingSyncer(GroupCommit);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<?>> futures  = new ArrayList<>();
+        final Path            file     = directory.resolve("file");
+        write(file, new byte[] { 1 });
+        try {
+            for (int i = 0; i < 1_000; i++) {
+                futures.add(executor.submit(() -> { syncer.sync(file); return null; }));
+            }
+            syncer.close();
+            for (Future<?> next : futures) {
+                try {
+                    // either synced or rejected, never left waiting
+                    next.get(10, SECONDS);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof CormorantException);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        try {
+            syncer.sync(file);
+            fail();
+        } catch (CormorantException e) {
+            assertEquals("File syncer is closed.", e.getMessage());
+        }
+    }
+
+    protected void awaitLatch(final CountDownLatch latch) {
+        try {
+            latch.await(10, SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class RecordingSyncer extends FileSyncer {
+
+        RecordingSyncer(final Durability durability) {
+            super(durability);
+        }
+
+        @Override
+        protected void force(final Path file) throws IOException {
+            if ( ! isDirectory(file) ) {
+                forced.add(file.toAbsolutePath());
+            }
+            super.force(file);
+        }
+
+        @Override
+        protected void forceDirectory(final Path directory) throws IOException {
+            forced.add(directory.toAbsolutePath());
+            super.forceDirectory(directory);
+        }
+    }
+}
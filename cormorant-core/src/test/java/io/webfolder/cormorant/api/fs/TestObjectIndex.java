@@ -0,0 +1,249 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.fs;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.size;
+import static java.nio.file.Files.write;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.webfolder.cormorant.api.model.ListContainerOptions;
+
+public class TestObjectIndex {
+
+    private Path directory;
+
+    private Path root;
+
+    private Path container;
+
+    private Path indexStore;
+
+    private ObjectIndex index;
+
+    @Before
+    public void init() throws IOException {
+        directory  = createTempDirectory("cormorant-index");
+        root       = directory.resolve("objects");
+        container  = root.resolve("mycontainer");
+        indexStore = directory.resolve("index");
+        createDirectories(container.resolve("b").resolve("d"));
+        write(container.resolve("a.txt"), new byte[] { 1 });
+        write(container.resolve("b").resolve("c.txt"), new byte[] { 1 });
+        write(container.resolve("b").resolve("d").resolve("e.txt"), new byte[] { 1 });
+        write(container.resolve("f.txt"), new byte[] { 1 });
+        index = new ObjectIndex(root, indexStore);
+        index.load();
+    }
+
+    @After
+    public void destroy() throws IOException {
+        index.close();
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void t01Rebuild() {
+        assertEquals(asList("a.txt", "b", "b/c.txt", "b/d", "b/d/e.txt", "f.txt"), new ArrayList<>(index.getNames(container).keySet()));
+        assertTrue(index.getNames(container).get("b"));
+        assertTrue(index.getNames(container).get("b/d"));
+        assertFalse(index.getNames(container).get("b/c.txt"));
+    }
+
+    @Test
+    public void t02Marker() {
+        assertEquals(asList("a.txt", "b"), list(null, null, null, 2, null, null, null));
+        assertEquals(asList("b/c.txt", "b/d"), list(null, null, null, 2, "b", null, null));
+        assertEquals(asList("f.txt"), list(null, null, null, 2, "b/d/e.txt", null, null));
+        assertEquals(asList(), list(null, null, null, 2, "f.txt", null, null));
+    }
+
+    @Test
+    public void t03EndMarker() {
+        assertEquals(asList("a.txt", "b", "b/c.txt"), list(null, null, null, null, null, "b/d", null));
+        assertEquals(asList("b/c.txt"), list(null, null, null, null, "b", "b/d", null));
+    }
+
+    @Test
+    public void t04PrefixAndDelimiter() {
+        assertEquals(asList("b", "b/c.txt", "b/d", "b/d/e.txt"), list(null, null, "b", null, null, null, null));
+        assertEquals(asList("a.txt", "b", "f.txt"), list(null, "/", null, null, null, null, null));
+        assertEquals(asList("b/c.txt", "b/d"), list(null, "/", "b/", null, null, null, null));
+        assertEquals(asList("b/d"), list(null, "/", "b/", null, "b/c.txt", null, null));
+    }
+
+    @Test
+    public void t05Path() {
+        assertEquals(asList("a.txt", "b", "f.txt"), list("", null, null, null, null, null, null));
+        assertEquals(asList("b/c.txt", "b/d"), list("b", null, null, null, null, null, null));
+        assertEquals(asList("b/d/e.txt"), list("b/d/", null, null, null, null, null, null));
+        assertEquals(asList(), list("x", null, null, null, null, null, null));
+    }
+
+    @Test
+    public void t06Reverse() {
+        assertEquals(asList("f.txt", "b/d/e.txt", "b/d", "b/c.txt", "b", "a.txt"), list(null, null, null, null, null, null, true));
+        assertEquals(asList("b/c.txt", "b"), list(null, null, null, 2, "b/d", null, true));
+        assertEquals(asList("f.txt", "b/d/e.txt", "b/d", "b/c.txt"), list(null, null, null, null, null, "b", true));
+        assertEquals(asList("b/d", "b/c.txt"), list("b", null, null, null, null, null, true));
+    }
+
+    @Test
+    public void t07AddAndRemove() throws IOException {
+        index.add(container, container.resolve("g").resolve("h.txt"), false);
+        index.remove(container, container.resolve("a.txt"));
+        assertEquals(asList("b", "b/c.txt", "b/d", "b/d/e.txt", "f.txt", "g", "g/h.txt"), list(null, null, null, null, null, null, null));
+        assertTrue(index.getNames(container).get("g"));
+    }
+
+    @Test
+    public void t08ReplayAfterCleanShutdown() throws IOException {
+        index.add(container, container.resolve("g.txt"), false);
+        index.remove(container, container.resolve("a.txt"));
+        index.close();
+        index = new ObjectIndex(root, indexStore);
+        index.load();
+        assertEquals(asList("b", "b/c.txt", "b/d", "b/d/e.txt", "f.txt", "g.txt"), new ArrayList<>(index.getNames(container).keySet()));
+    }
+
+    @Test
+    public void t09RebuildAfterUncleanShutdown() throws IOException {
+        index.add(container, container.resolve("g.txt"), false);
+        index.remove(container, container.resolve("a.txt"));
+        index = new ObjectIndex(root, indexStore);
+        index.load();
+        assertEquals(asList("a.txt", "b", "b/c.txt", "b/d", "b/d/e.txt", "f.txt"), new ArrayList<>(index.getNames(container).keySet()));
+    }
+
+    @Test
+    public void t10TruncatedJournal() throws IOException {
+        index.add(container, container.resolve("g.txt"), false);
+        index.close();
+        write(indexStore.resolve("mycontainer.index"), new byte[] { '+', 0 }, APPEND);
+        index = new ObjectIndex(root, indexStore);
+        index.load();
+        assertEquals(asList("a.txt", "b", "b/c.txt", "b/d", "b/d/e.txt", "f.txt", "g.txt"), new ArrayList<>(index.getNames(container).keySet()));
+    }
+
+    @Test
+    public void t11Compaction() throws IOException {
+        final Path file = indexStore.resolve("mycontainer.index");
+        final long initial = size(file);
+        for (int i = 0; i < 6_000; i++) {
+            index.add(container, container.resolve("g.txt"), false);
+            index.remove(container, container.resolve("g.txt"));
+        }
+        assertTrue(size(file) < initial + 12_000 * 9 / 2);
+        index.close();
+        index = new ObjectIndex(root, indexStore);
+        index.load();
+        assertEquals(asList("a.txt", "b", "b/c.txt", "b/d", "b/d/e.txt", "f.txt"), new ArrayList<>(index.getNames(container).keySet()));
+    }
+
+    @Test
+    public void t12Drop() throws IOException {
+        index.drop(container);
+        assertFalse(exists(indexStore.resolve("mycontainer.index")));
+    }
+
+    @Test
+    public void t13MissFallsBackToDiskAfterLoad() throws Exception {
+        final PathContainerService containerService = new PathContainerService(root, 1_000, null, null, index);
+        final PathObjectService    objectService    = new PathObjectService(containerService, null, index);
+        assertNull(objectService.getObject("myaccount", "mycontainer", "g.txt"));
+        assertNull(objectService.getDirectory(container, "x"));
+        // added out of band, found on disk and added to the index
+        write(container.resolve("g.txt"), new byte[] { 1 });
+        createDirectories(container.resolve("x").resolve("y"));
+        assertEquals(container.resolve("g.txt"), objectService.getObject("myaccount", "mycontainer", "g.txt"));
+        assertEquals(container.resolve("x").resolve("y"), objectService.getDirectory(container, "x/y"));
+        assertFalse(index.getNames(container).get("g.txt"));
+        assertTrue(index.getNames(container).get("x"));
+        assertTrue(index.getNames(container).get("x/y"));
+        assertEquals(container.resolve("a.txt"), objectService.getObject("myaccount", "mycontainer", "a.txt"));
+        assertEquals(container.resolve("b"), objectService.getDirectory(container, "b"));
+        final Path source = directory.resolve("h.txt");
+        write(source, new byte[] { 1 });
+        objectService.moveObject("myaccount", source, container, "h.txt");
+        assertEquals(container.resolve("h.txt"), objectService.getObject("myaccount", "mycontainer", "h.txt"));
+    }
+
+    @Test
+    public void t14MissFallsBackToDiskBeforeLoad() throws Exception {
+        write(container.resolve("g.txt"), new byte[] { 1 });
+        index.close();
+        index = new ObjectIndex(root, indexStore);
+        assertFalse(index.isLoaded());
+        final PathContainerService containerService = new PathContainerService(root, 1_000, null, null, index);
+        final PathObjectService    objectService    = new PathObjectService(containerService, null, index);
+        assertEquals(container.resolve("g.txt"), objectService.getObject("myaccount", "mycontainer", "g.txt"));
+        index.load();
+        assertTrue(index.isLoaded());
+    }
+
+    @Test
+    public void t15OtherDelimiter() throws IOException {
+        index.add(container, container.resolve("a-1"), false);
+        index.add(container, container.resolve("a-2"), false);
+        assertEquals(asList("a-1", "a-2", "a.txt"), list(null, "-", "a", null, null, null, null));
+        assertEquals(asList("a-1", "a-2", "a.txt", "b", "b/c.txt", "b/d", "b/d/e.txt", "f.txt"), list(null, "-", null, null, null, null, null));
+    }
+
+    protected List<String> list(
+                        final String  path     ,
+                        final String  delimiter,
+                        final String  prefix   ,
+                        final Integer limit    ,
+                        final String  marker   ,
+                        final String  endMarker,
+                        final Boolean reverse  ) {
+        final PathContainerService service = new PathContainerService(root, 1_000, null, null, index);
+        final ListContainerOptions options = new ListContainerOptions(path, delimiter, prefix, limit, marker, endMarker, reverse);
+        final List<String> names = new ArrayList<>();
+        for (Path next : service.listObjects(container, index.getNames(container), options)) {
+            names.add(container.relativize(next).toString().replace('\\', '/'));
+        }
+        return names;
+    }
+}
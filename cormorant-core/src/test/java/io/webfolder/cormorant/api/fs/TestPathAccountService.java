@@ -0,0 +1,114 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.fs;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.webfolder.cormorant.api.fs.ContainerStatsStore.Stats;
+import io.webfolder.cormorant.api.model.Container;
+
+public class TestPathAccountService {
+
+    private Path directory;
+
+    private Path root;
+
+    private Path statsStore;
+
+    @Before
+    public void init() throws IOException {
+        directory  = createTempDirectory("cormorant-stats");
+        root       = directory.resolve("objects");
+        statsStore = directory.resolve("stats");
+        createDirectories(root.resolve("mycontainer"));
+        write(root.resolve("mycontainer").resolve("a.txt"), new byte[] { 1, 2, 3 });
+        write(root.resolve("mycontainer").resolve("b.txt"), new byte[] { 1, 2, 3 });
+    }
+
+    @After
+    public void destroy() throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void t01StatsStore() throws IOException {
+        final ContainerStatsStore store = new ContainerStatsStore(statsStore);
+        store.write("mycontainer", new Stats("key", 2, 6, false));
+        store.write("mycontainer", new Stats("key", 3, 9, true));
+        final Stats stats = store.read("mycontainer");
+        assertEquals("key", stats.key);
+        assertEquals(3, stats.objectCount);
+        assertEquals(9, stats.bytesUsed);
+        assertTrue(stats.clean);
+        assertFalse(exists(statsStore.resolve("mycontainer.stats.tmp")));
+    }
+
+    @Test
+    public void t02CleanShutdown() throws IOException {
+        PathAccountService service = new PathAccountService(root, statsStore);
+        Container container = service.getContainer("myaccount", "mycontainer");
+        assertEquals(Long.valueOf(2), container.getObjectCount());
+        assertEquals(Long.valueOf(6), container.getBytesUsed());
+        container.incrementObjectCount();
+        container.addBytesUsed(4);
+        service.close();
+        assertTrue(new ContainerStatsStore(statsStore).read("mycontainer").clean);
+        service = new PathAccountService(root, statsStore);
+        container = service.getContainer("myaccount", "mycontainer");
+        // counters of a clean shutdown are trusted without a walk
+        assertEquals(Long.valueOf(3), container.getObjectCount());
+        assertEquals(Long.valueOf(10), container.getBytesUsed());
+        service.close();
+    }
+
+    @Test
+    public void t03Reconcile() throws IOException {
+        final PathAccountService service = new PathAccountService(root, statsStore);
+        final Container container = service.getContainer("myaccount", "mycontainer");
+        container.setObjectCount(10);
+        container.setBytesUsed(100);
+        service.reconcile("myaccount", "mycontainer");
+        assertEquals(Long.valueOf(2), container.getObjectCount());
+        assertEquals(Long.valueOf(6), container.getBytesUsed());
+        assertEquals(2, new ContainerStatsStore(statsStore).read("mycontainer").objectCount);
+        service.close();
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.metadata;
+
+import static java.nio.file.Files.createTempDirectory;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCachingMetadataService {
+
+    private Path directory;
+
+    private LogMetadataService delegate;
+
+    private CachingMetadataService service;
+
+    @Before
+    public void init() throws IOException, SQLException {
+        directory = createTempDirectory("cormorant-cache");
+        delegate  = new LogMetadataService(directory);
+        service   = new CachingMetadataService(delegate, 100);
+        service.init();
+    }
+
+    @After
+    public void destroy() throws IOException {
+        service.close();
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void t01ReadThrough() throws SQLException {
+        delegate.update("a", "k1", "v1");
+        assertEquals("v1", service.get("a", "k1"));
+        assertEquals(0, service.getHitCount());
+        assertEquals(1, service.getMissCount());
+        assertTrue(service.contains("a", "k1"));
+        assertFalse(service.contains("a", "k2"));
+        assertNull(service.get("a", "k2"));
+        assertEquals(3, service.getHitCount());
+        assertEquals(1, service.getMissCount());
+        assertEquals(1, service.size());
+    }
+
+    @Test
+    public void t02CachedValueIsServed() throws SQLException {
+        delegate.update("a", "k1", "v1");
+        assertEquals("v1", service.get("a", "k1"));
+        // bypasses the cache, the stale value is still served
+        delegate.update("a", "k1", "v2");
+        assertEquals("v1", service.get("a", "k1"));
+    }
+
+    @Test
+    public void t03WritesInvalidate() throws SQLException {
+        service.update("a", "k1", "v1");
+        assertEquals("v1", service.get("a", "k1"));
+        service.update("a", "k1", "v2");
+        assertEquals(0, service.size());
+        assertEquals("v2", service.get("a", "k1"));
+
+        service.add("a", "k2", "v3");
+        assertEquals("v3", service.get("a", "k2"));
+
+        service.setValues("a", singletonMap("k1", null));
+        assertFalse(service.contains("a", "k1"));
+        assertEquals("v3", service.get("a", "k2"));
+
+        service.delete("a", "k2");
+        assertFalse(service.contains("a", "k2"));
+
+        service.update("a", "k3", "v4");
+        assertEquals("v4", service.get("a", "k3"));
+        service.delete("a");
+        assertTrue(service.getValues("a").isEmpty());
+    }
+
+    @Test
+    public void t04GetValuesIsCopy() throws SQLException {
+        service.update("a", "k1", "v1");
+        final Map<String, Object> values = service.getValues("a");
+        values.put("k2", "v2");
+        assertFalse(service.contains("a", "k2"));
+    }
+
+    @Test
+    public void t05BulkGetValues() throws SQLException {
+        service.update("a", "k1", "v1");
+        service.update("a", "k2", "v2");
+        service.update("b", "k1", "v3");
+        // only a is cached
+        assertEquals("v1", service.get("a", "k1"));
+        final long misses = service.getMissCount();
+
+        final Map<String, Map<String, Object>> values = service.getValues(asList("a", "b", "c"), singletonList("k1"));
+        assertEquals(3, values.size());
+        assertEquals(singletonMap("k1", "v1"), values.get("a"));
+        assertEquals(singletonMap("k1", "v3"), values.get("b"));
+        assertTrue(values.get("c").isEmpty());
+        assertEquals(misses + 2, service.getMissCount());
+        // partial results are not cached
+        assertEquals(1, service.size());
+    }
+}
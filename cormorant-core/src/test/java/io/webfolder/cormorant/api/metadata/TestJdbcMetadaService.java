@@ -0,0 +1,108 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.metadata;
+
+import static java.nio.file.Files.createTempDirectory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.webfolder.cormorant.api.SQLiteDataSourceFactory;
+
+public class TestJdbcMetadaService {
+
+    private Path directory;
+
+    private DataSource ds;
+
+    @Before
+    public void init() throws IOException {
+        directory = createTempDirectory("cormorant-jdbc");
+        ds        = new SQLiteDataSourceFactory(directory).get();
+    }
+
+    @After
+    public void destroy() throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void t01AddIsIdempotent() throws SQLException {
+        final JdbcMetadaService service = new JdbcMetadaService(ds, "", "ACCOUNT_META");
+        service.init();
+        assertTrue(hasIndex("UIDX_ACCOUNT_META"));
+        service.add("a", "k1", "v1");
+        service.add("a", "k1", "v2");
+        assertEquals("v2", service.get("a", "k1"));
+        assertEquals(1, service.getValues("a").size());
+    }
+
+    @Test
+    public void t02MigrateTable() throws SQLException {
+        try (Connection conn = ds.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("create table ACCOUNT_META (NAMESPACE VARCHAR(1024), KEY VARCHAR(1024), VALUE VARCHAR(4096))");
+            stmt.execute("create index IDX_ACCOUNT_META on ACCOUNT_META(NAMESPACE, KEY)");
+            stmt.execute("insert into ACCOUNT_META (NAMESPACE, KEY, VALUE) values ('a', 'k1', 'v1')");
+            stmt.execute("insert into ACCOUNT_META (NAMESPACE, KEY, VALUE) values ('a', 'k1', 'v2')");
+        }
+        final JdbcMetadaService service = new JdbcMetadaService(ds, "", "ACCOUNT_META");
+        service.init();
+        assertTrue(hasIndex("UIDX_ACCOUNT_META"));
+        assertFalse(hasIndex("IDX_ACCOUNT_META"));
+        // the latest of the duplicate rows is kept
+        assertEquals("v2", service.get("a", "k1"));
+        service.update("a", "k1", "v3");
+        assertEquals("v3", service.get("a", "k1"));
+        assertEquals(1, service.getValues("a").size());
+    }
+
+    protected boolean hasIndex(final String index) throws SQLException {
+        try (Connection conn = ds.getConnection();
+                ResultSet rs = conn.getMetaData().getIndexInfo(null, null, "ACCOUNT_META", false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.metadata;
+
+import static java.nio.file.Files.createTempDirectory;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.webfolder.cormorant.api.SQLiteDataSourceFactory;
+
+public class TestJdbcObjectCatalog {
+
+    private Path directory;
+
+    private DataSource ds;
+
+    @Before
+    public void init() throws IOException {
+        directory = createTempDirectory("cormorant-catalog");
+        ds        = new SQLiteDataSourceFactory(directory).get();
+    }
+
+    @After
+    public void destroy() throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void t01Migrate() throws SQLException {
+        try (Connection conn = ds.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("create table OBJECT_META_SYS (NAMESPACE VARCHAR(1024), KEY VARCHAR(1024), VALUE VARCHAR(4096))");
+            stmt.execute("insert into OBJECT_META_SYS (NAMESPACE, KEY, VALUE) values ('a', 'Content-Type', 'text/plain')");
+            stmt.execute("insert into OBJECT_META_SYS (NAMESPACE, KEY, VALUE) values ('a', 'X-Object-Manifest', 'c/a')");
+            stmt.execute("insert into OBJECT_META_SYS (NAMESPACE, KEY, VALUE) values ('a', 'X-Legacy-Key', 'v1')");
+            stmt.execute("insert into OBJECT_META_SYS (NAMESPACE, KEY, VALUE) values ('b', 'Content-Encoding', 'gzip')");
+        }
+        final JdbcObjectCatalog catalog = new JdbcObjectCatalog(ds, "", "OBJECT_CATALOG", "OBJECT_META_SYS");
+        catalog.init();
+        assertEquals("text/plain", catalog.get("a", "Content-Type"));
+        assertEquals("c/a", catalog.get("a", "X-Object-Manifest"));
+        // keys without a column are not dropped by the migration
+        assertEquals("v1", catalog.get("a", "X-Legacy-Key"));
+        assertEquals(3, catalog.getValues("a").size());
+        assertEquals("gzip", catalog.getValues("b").get("Content-Encoding"));
+        final Map<String, Map<String, Object>> values = catalog.getValues(asList("a", "b", "c"), asList("Content-Type", "X-Legacy-Key"));
+        assertEquals(2, values.get("a").size());
+        assertTrue(values.get("b").isEmpty());
+        assertTrue(values.get("c").isEmpty());
+        // the legacy row of a key with a column is stale and does not hide the catalog value
+        catalog.update("a", "Content-Type", "text/html");
+        assertEquals("text/html", catalog.getValues("a").get("Content-Type"));
+    }
+
+    @Test
+    public void t02OtherKeys() throws SQLException {
+        final JdbcObjectCatalog catalog = new JdbcObjectCatalog(ds, "", "OBJECT_CATALOG", "OBJECT_META_SYS");
+        catalog.init();
+        final Map<String, Object> values = new HashMap<>();
+        values.put("Content-Type", "text/plain");
+        values.put("X-Other-Key", "v1");
+        catalog.setValues("a", values);
+        assertEquals("v1", catalog.get("a", "X-Other-Key"));
+        assertEquals(2, catalog.getValues("a").size());
+        catalog.delete("a", "X-Other-Key");
+        assertNull(catalog.get("a", "X-Other-Key"));
+        catalog.update("a", "X-Other-Key", "v2");
+        catalog.delete("a");
+        assertTrue(catalog.getValues("a").isEmpty());
+    }
+}
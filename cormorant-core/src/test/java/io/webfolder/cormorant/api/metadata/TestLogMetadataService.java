@@ -0,0 +1,235 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.metadata;
+
+import static io.webfolder.cormorant.api.fs.Durability.Sync;
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.webfolder.cormorant.api.fs.FileSyncer;
+
+public class TestLogMetadataService {
+
+    private Path directory;
+
+    private LogMetadataService service;
+
+    @Before
+    public void init() throws IOException {
+        directory = createTempDirectory("cormorant-log");
+        service   = open();
+    }
+
+    @After
+    public void destroy() throws IOException {
+        service.close();
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void t01UpdateAndGet() {
+        service.update("a", "k1", "v1");
+        service.update("a", "k2", "v2");
+        assertEquals("v1", service.get("a", "k1"));
+        assertTrue(service.contains("a", "k2"));
+        assertFalse(service.contains("a", "k3"));
+        assertEquals(2, service.getValues("a").size());
+        assertTrue(service.getValues("b").isEmpty());
+    }
+
+    @Test
+    public void t02NullValueRemovesKey() throws IOException {
+        service.update("a", "k1", "v1");
+        service.update("a", "k2", "v2");
+        final Map<String, Object> values = new HashMap<>();
+        values.put("k1", null);
+        values.put("k3", "v3");
+        service.setValues("a", values);
+        assertNull(service.get("a", "k1"));
+        assertEquals("v3", service.get("a", "k3"));
+        service.add("a", "k2", null);
+        assertEquals("v2", service.get("a", "k2"));
+        service.delete("a", "k2");
+        service.delete("a", "k3");
+        assertTrue(service.getValues("a").isEmpty());
+        service.update("b", "k1", "v1");
+        service.delete("b");
+        assertTrue(service.getValues("b").isEmpty());
+        reopen();
+        assertTrue(service.getValues("a").isEmpty());
+        assertTrue(service.getValues("b").isEmpty());
+    }
+
+    @Test
+    public void t03Replay() throws IOException {
+        service.update("a", "k1", "v1");
+        service.update("a", "k1", "v2");
+        service.update("b", "k1", "v1");
+        reopen();
+        assertEquals("v2", service.get("a", "k1"));
+        assertEquals("v1", service.get("b", "k1"));
+    }
+
+    @Test
+    public void t04TornTail() throws IOException {
+        service.update("a", "k1", "v1");
+        service.update("b", "k1", "v1");
+        service.close();
+        final int second = getSecondRecord();
+        try (FileChannel channel = FileChannel.open(getLogFile(), READ, WRITE)) {
+            final ByteBuffer length = ByteBuffer.allocate(4);
+            channel.read(length, second);
+            length.flip();
+            // the last bytes of the record never reached the disk
+            channel.write(ByteBuffer.allocate(4), second + 8 + length.getInt() - 4);
+        }
+        service = open();
+        assertEquals("v1", service.get("a", "k1"));
+        assertNull(service.get("b", "k1"));
+        service.update("c", "k1", "v1");
+        reopen();
+        assertEquals("v1", service.get("a", "k1"));
+        assertNull(service.get("b", "k1"));
+        assertEquals("v1", service.get("c", "k1"));
+    }
+
+    @Test
+    public void t05CorruptRecord() throws IOException {
+        service.update("a", "k1", "v1");
+        service.update("b", "k1", "v1");
+        service.update("c", "k1", "v1");
+        service.close();
+        final int second = getSecondRecord();
+        try (FileChannel channel = FileChannel.open(getLogFile(), READ, WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 'x' }), second + 8 + 2);
+        }
+        service = open();
+        assertEquals("v1", service.get("a", "k1"));
+        assertNull(service.get("b", "k1"));
+        assertNull(service.get("c", "k1"));
+    }
+
+    @Test
+    public void t06Compaction() throws IOException {
+        for (int i = 0; i < 1_000; i++) {
+            service.update("a", "k1", String.valueOf(i));
+        }
+        service.update("b", "k1", "v1");
+        service.update("c", "k1", "v1");
+        service.delete("c");
+        service.compact();
+        assertEquals("999", service.get("a", "k1"));
+        assertEquals("v1", service.get("b", "k1"));
+        assertNull(service.get("c", "k1"));
+        service.update("d", "k1", "v1");
+        reopen();
+        assertEquals("999", service.get("a", "k1"));
+        assertEquals("v1", service.get("b", "k1"));
+        assertNull(service.get("c", "k1"));
+        assertEquals("v1", service.get("d", "k1"));
+        // only the live records of a, b and d are left in the log
+        assertEquals(4 + (8 + 17) + 2 * (8 + 16), getEnd());
+    }
+
+    @Test
+    public void t07SyncDurability() throws IOException {
+        service.close();
+        try (FileSyncer syncer = new FileSyncer(Sync)) {
+            service = new LogMetadataService(directory, syncer);
+            service.init();
+            service.update("a", "k1", "v1");
+            service.delete("a");
+            service.update("b", "k1", "v1");
+            service.compact();
+            service.update("c", "k1", "v1");
+            reopen();
+            assertNull(service.get("a", "k1"));
+            assertEquals("v1", service.get("b", "k1"));
+            assertEquals("v1", service.get("c", "k1"));
+        }
+    }
+
+    protected LogMetadataService open() {
+        final LogMetadataService service = new LogMetadataService(directory);
+        service.init();
+        return service;
+    }
+
+    protected void reopen() throws IOException {
+        service.close();
+        service = open();
+    }
+
+    protected Path getLogFile() {
+        return directory.resolve("metadata.log");
+    }
+
+    protected int getSecondRecord() throws IOException {
+        try (FileChannel channel = FileChannel.open(getLogFile(), READ)) {
+            final ByteBuffer length = ByteBuffer.allocate(4);
+            channel.read(length, 4);
+            length.flip();
+            return 4 + 8 + length.getInt();
+        }
+    }
+
+    /**
+     * @return position after the last record of the log
+     */
+    protected int getEnd() throws IOException {
+        try (FileChannel channel = FileChannel.open(getLogFile(), READ)) {
+            int position = 4;
+            while (true) {
+                final ByteBuffer length = ByteBuffer.allocate(4);
+                channel.read(length, position);
+                length.flip();
+                final int next = length.getInt();
+                if (next <= 0) {
+                    return position;
+                }
+                position += 8 + next;
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.api.metadata;
+
+import static io.webfolder.cormorant.api.metadata.CacheNames.OBJECT;
+import static io.webfolder.cormorant.api.metadata.CacheNames.OBJECT_SYS;
+import static io.webfolder.cormorant.api.metadata.XattrMetadataService.MAX_ATTRIBUTES_SIZE;
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.getFileStore;
+import static java.nio.file.Files.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.webfolder.cormorant.api.exception.CormorantException;
+
+public class TestXattrMetadataService {
+
+    private Path directory;
+
+    private XattrMetadataService service;
+
+    private XattrMetadataService systemService;
+
+    @Before
+    public void init() throws IOException {
+        directory = createTempDirectory("cormorant-xattr");
+        assumeTrue(getFileStore(directory).supportsFileAttributeView(UserDefinedFileAttributeView.class));
+        write(directory.resolve("a.txt"), new byte[] { 1, 2, 3 });
+        service       = new XattrMetadataService(directory, OBJECT);
+        systemService = new XattrMetadataService(directory, OBJECT_SYS);
+        service.init();
+        systemService.init();
+    }
+
+    @After
+    public void destroy() throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void t01UpdateAndGet() {
+        service.update("a.txt", "k1", "v1");
+        systemService.update("a.txt", "k1", "s1");
+        assertEquals("v1", service.get("a.txt", "k1"));
+        assertEquals("s1", systemService.get("a.txt", "k1"));
+        assertTrue(service.contains("a.txt", "k1"));
+        assertFalse(service.contains("a.txt", "k2"));
+        assertEquals(1, service.getValues("a.txt").size());
+        service.update("a.txt", "k1", null);
+        assertNull(service.get("a.txt", "k1"));
+        assertEquals("s1", systemService.get("a.txt", "k1"));
+    }
+
+    @Test
+    public void t02TooLarge() {
+        final Map<String, Object> values = new HashMap<>();
+        values.put("k1", value(MAX_ATTRIBUTES_SIZE / 2));
+        values.put("k2", value(MAX_ATTRIBUTES_SIZE / 2));
+        try {
+            service.setValues("a.txt", values);
+            fail();
+        } catch (CormorantException e) {
+            assertEquals(400, e.getStatusCode());
+        }
+        // nothing is written if the metadata is rejected
+        assertTrue(service.getValues("a.txt").isEmpty());
+    }
+
+    @Test
+    public void t03ExistingAttributesCount() {
+        systemService.update("a.txt", "k1", value(MAX_ATTRIBUTES_SIZE / 2));
+        try {
+            service.update("a.txt", "k1", value(MAX_ATTRIBUTES_SIZE / 2));
+            fail();
+        } catch (CormorantException e) {
+            assertEquals(400, e.getStatusCode());
+        }
+        // a replaced value is not counted twice
+        service.update("a.txt", "k1", value(MAX_ATTRIBUTES_SIZE / 4));
+        service.update("a.txt", "k1", value(MAX_ATTRIBUTES_SIZE / 4));
+        assertEquals(MAX_ATTRIBUTES_SIZE / 4, service.get("a.txt", "k1").length());
+    }
+
+    protected String value(final int size) {
+        final char[] chars = new char[size];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
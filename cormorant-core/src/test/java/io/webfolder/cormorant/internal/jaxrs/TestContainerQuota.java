@@ -0,0 +1,141 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.internal.jaxrs;
+
+import static java.lang.reflect.Proxy.newProxyInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.webfolder.cormorant.api.exception.CormorantException;
+import io.webfolder.cormorant.api.model.Container;
+import io.webfolder.cormorant.api.service.AccountService;
+import io.webfolder.cormorant.api.service.ContainerService;
+
+public class TestContainerQuota {
+
+    private Container container;
+
+    private long maxQuotaBytes;
+
+    private long maxQuotaCount;
+
+    private ContainerQuota<Object> quota;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() {
+        container     = new Container("mycontainer", 0L, 0L, 2L, 100L);
+        maxQuotaBytes = 1_000L;
+        maxQuotaCount = 3L;
+        final AccountService accountService = (AccountService) newProxyInstance(getClass().getClassLoader(),
+                                                    new Class<?>[] { AccountService.class },
+                                                    (proxy, method, args) -> container);
+        final ContainerService<Object> containerService = (ContainerService<Object>) newProxyInstance(getClass().getClassLoader(),
+                                                    new Class<?>[] { ContainerService.class },
+                                                    (proxy, method, args) -> "getMaxQuotaBytes".equals(method.getName()) ?
+                                                                                        maxQuotaBytes : maxQuotaCount);
+        quota = new ContainerQuota<>(accountService, containerService);
+    }
+
+    @Test
+    public void t01Check() throws Exception {
+        quota.check(900L, "myaccount", "mycontainer");
+        quota.check(null, "myaccount", "mycontainer");
+        try {
+            quota.check(901L, "myaccount", "mycontainer");
+            fail();
+        } catch (CormorantException e) {
+            assertEquals(413, e.getStatusCode());
+        }
+        container.incrementObjectCount();
+        try {
+            quota.check(1L, "myaccount", "mycontainer");
+            fail();
+        } catch (CormorantException e) {
+            assertEquals(413, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void t02BytesLeft() throws Exception {
+        assertEquals(900L, quota.getBytesLeft("myaccount", "mycontainer"));
+        container.addBytesUsed(2_000L);
+        assertEquals(0L, quota.getBytesLeft("myaccount", "mycontainer"));
+        maxQuotaBytes = Long.MAX_VALUE;
+        assertEquals(Long.MAX_VALUE, quota.getBytesLeft("myaccount", "mycontainer"));
+    }
+
+    @Test
+    public void t03AddBytesUsed() throws Exception {
+        quota.addBytesUsed(container, "myaccount", "mycontainer", 900L);
+        assertEquals(Long.valueOf(1_000L), container.getBytesUsed());
+        try {
+            quota.addBytesUsed(container, "myaccount", "mycontainer", 1L);
+            fail();
+        } catch (CormorantException e) {
+            assertEquals(413, e.getStatusCode());
+        }
+        assertEquals(Long.valueOf(1_000L), container.getBytesUsed());
+        // an overwrite with a smaller object always fits
+        maxQuotaBytes = 500L;
+        quota.addBytesUsed(container, "myaccount", "mycontainer", -100L);
+        assertEquals(Long.valueOf(900L), container.getBytesUsed());
+    }
+
+    @Test
+    public void t04ConcurrentUploads() throws Exception {
+        final CountDownLatch start    = new CountDownLatch(1);
+        final AtomicInteger  accepted = new AtomicInteger();
+        final List<Thread>   threads  = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    quota.addBytesUsed(container, "myaccount", "mycontainer", 100L);
+                    accepted.incrementAndGet();
+                } catch (CormorantException e) {
+                    // rejected, the quota is used up
+                } catch (InterruptedException | SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread next : threads) {
+            next.join();
+        }
+        assertEquals(9, accepted.get());
+        assertEquals(Long.valueOf(1_000L), container.getBytesUsed());
+    }
+}
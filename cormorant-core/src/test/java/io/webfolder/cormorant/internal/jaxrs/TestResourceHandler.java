@@ -0,0 +1,242 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.internal.jaxrs;
+
+import static java.lang.reflect.Proxy.newProxyInstance;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.write;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Collections.emptyMap;
+import static javax.ws.rs.core.Response.Status.OK;
+import static javax.ws.rs.core.Response.Status.PARTIAL_CONTENT;
+import static javax.ws.rs.core.Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.Response.Status;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.webfolder.cormorant.api.model.Segment;
+import io.webfolder.cormorant.api.service.ObjectService;
+
+public class TestResourceHandler {
+
+    private static final String CONTENT = "abcdefghij";
+
+    private Path directory;
+
+    private List<Segment<Path>> segments;
+
+    private ObjectService<Path> objectService;
+
+    private Map<String, String> requestHeaders;
+
+    private Map<String, String> responseHeaders;
+
+    private ByteArrayOutputStream body;
+
+    private String contentType;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() throws IOException {
+        directory = createTempDirectory("cormorant");
+        // the empty segment starts at the same offset as the next one
+        segments = new ArrayList<>();
+        String[] parts = { "abc", "", "defgh", "ij" };
+        for (int i = 0; i < parts.length; i++) {
+            Path segment = write(directory.resolve("segment-" + i), parts[i].getBytes(ISO_8859_1));
+            segments.add(new Segment<>("text/plain", parts[i].length(), segment));
+        }
+        objectService = (ObjectService<Path>) newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ObjectService.class }, (proxy, method, args) -> {
+            if ("getReadableChannel".equals(method.getName())) {
+                return FileChannel.open((Path) args[0], READ);
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+        requestHeaders  = new HashMap<>();
+        responseHeaders = new HashMap<>();
+        body            = new ByteArrayOutputStream();
+    }
+
+    @After
+    public void dispose() throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void t01IndexOf() {
+        SegmentIndex<Path> index = createIndex();
+        assertEquals(10, index.getLength());
+        assertEquals(0, index.indexOf(0));
+        assertEquals(0, index.indexOf(2));
+        assertEquals(2, index.indexOf(3));
+        assertEquals(2, index.indexOf(7));
+        assertEquals(3, index.indexOf(8));
+        assertEquals(3, index.indexOf(9));
+        assertEquals(3, index.getOffset(2));
+        assertEquals(5, index.getSize(2));
+    }
+
+    @Test
+    public void t02RangeAcrossSegments() throws Exception {
+        ResourceHandler<Path> handler = new ResourceHandler<>(objectService, createResource());
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        handler.write(createIndex(), 2, 7, os);
+        assertEquals("cdefghi", new String(os.toByteArray(), ISO_8859_1));
+    }
+
+    @Test
+    public void t03RangeWithinSegment() throws Exception {
+        assertEquals(PARTIAL_CONTENT, handle("bytes=4-6"));
+        assertEquals("efg", getBody());
+        assertEquals("bytes 4-6/10", responseHeaders.get("Content-Range"));
+    }
+
+    @Test
+    public void t04SuffixRange() throws Exception {
+        assertEquals(PARTIAL_CONTENT, handle("bytes=-4"));
+        assertEquals("ghij", getBody());
+        assertEquals("bytes 6-9/10", responseHeaders.get("Content-Range"));
+    }
+
+    @Test
+    public void t05OpenEndedRange() throws Exception {
+        assertEquals(PARTIAL_CONTENT, handle("bytes=2-"));
+        assertEquals("cdefghij", getBody());
+    }
+
+    @Test
+    public void t06MultiRange() throws Exception {
+        assertEquals(PARTIAL_CONTENT, handle("bytes=0-1,5-8"));
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        String expected = "\r\n--" + boundary + "\r\n" +
+                          "Content-Type: text/plain\r\n" +
+                          "Content-Range: bytes 0-1/10\r\n" +
+                          "\r\n" +
+                          "ab" +
+                          "\r\n--" + boundary + "\r\n" +
+                          "Content-Type: text/plain\r\n" +
+                          "Content-Range: bytes 5-8/10\r\n" +
+                          "\r\n" +
+                          "fghi" +
+                          "\r\n--" + boundary + "--\r\n";
+        assertEquals(expected, getBody());
+    }
+
+    @Test
+    public void t07FullContent() throws Exception {
+        assertEquals(OK, handle(null));
+        assertEquals(CONTENT, getBody());
+    }
+
+    @Test
+    public void t08UnsatisfiableRange() throws Exception {
+        assertEquals(REQUESTED_RANGE_NOT_SATISFIABLE, handle("bytes=11-12"));
+        assertEquals("bytes */10", responseHeaders.get("Content-Range"));
+    }
+
+    protected SegmentIndex<Path> createIndex() {
+        List<Path> objects = new ArrayList<>();
+        long[]     sizes   = new long[segments.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            objects.add(segments.get(i).getObject());
+            sizes[i] = segments.get(i).getSize();
+        }
+        return new SegmentIndex<>(objects, sizes);
+    }
+
+    protected Resource<Path> createResource() {
+        return new Resource<>(directory, directory.resolve("manifest"),
+                              CONTENT.length(), 0L,
+                              0L, "etag",
+                              "text/plain", null,
+                              true, false,
+                              emptyMap(), segments);
+    }
+
+    protected Status handle(String range) throws Exception {
+        if (range != null) {
+            requestHeaders.put("Range", range);
+        }
+        HttpServletRequest request = (HttpServletRequest) newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getHeader"    : return requestHeaders.get(args[0]);
+                case "getDateHeader": return -1L;
+                default             : return null;
+            }
+        });
+        ServletOutputStream os = new ServletOutputStream() {
+
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+        HttpServletResponse response = (HttpServletResponse) newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "setHeader"      : responseHeaders.put((String) args[0], (String) args[1]); return null;
+                case "setContentType" : contentType = (String) args[0]; return null;
+                case "getOutputStream": return os;
+                default               : return null;
+            }
+        });
+        return new ResourceHandler<>(objectService, createResource()).handle(request, response);
+    }
+
+    protected String getBody() {
+        return new String(body.toByteArray(), ISO_8859_1);
+    }
+}
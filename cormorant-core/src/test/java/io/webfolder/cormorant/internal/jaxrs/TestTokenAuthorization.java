@@ -0,0 +1,68 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.internal.jaxrs;
+
+import static java.lang.reflect.Proxy.newProxyInstance;
+import static java.time.Instant.now;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.webfolder.cormorant.api.service.KeystoneService;
+
+public class TestTokenAuthorization {
+
+    private TokenAuthorization authorization;
+
+    @Before
+    public void init() {
+        final Map<String, Principal> tokens = new HashMap<>();
+        tokens.put("valid"   , new CormorantPrincipal("myuser"   , "valid"   , now().plusSeconds(60)));
+        tokens.put("expired" , new CormorantPrincipal("myuser"   , "expired" , now().minusSeconds(60)));
+        tokens.put("readonly", new CormorantPrincipal("otheruser", "readonly", now().plusSeconds(60)));
+        final KeystoneService keystoneService = (KeystoneService) newProxyInstance(getClass().getClassLoader(),
+                                                    new Class<?>[] { KeystoneService.class },
+                                                    (proxy, method, args) -> "myuser".equals(args[0]));
+        authorization = new TokenAuthorization(tokens, keystoneService, "myaccount");
+    }
+
+    @Test
+    public void t01Authorized() {
+        assertTrue(authorization.isAuthorized("valid", "cormorant-object", "PUT", "myaccount"));
+    }
+
+    @Test
+    public void t02Rejected() {
+        assertFalse(authorization.isAuthorized(null, "cormorant-object", "PUT", "myaccount"));
+        assertFalse(authorization.isAuthorized("unknown", "cormorant-object", "PUT", "myaccount"));
+        assertFalse(authorization.isAuthorized("expired", "cormorant-object", "PUT", "myaccount"));
+        assertFalse(authorization.isAuthorized("readonly", "cormorant-object", "PUT", "myaccount"));
+        assertFalse(authorization.isAuthorized("valid", "cormorant-object", "PUT", "otheraccount"));
+    }
+}
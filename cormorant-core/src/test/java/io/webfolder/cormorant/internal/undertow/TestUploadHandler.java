@@ -0,0 +1,308 @@
+/**
+ * The MIT License
+ * Copyright © 2017, 2019 WebFolder OÜ
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.webfolder.cormorant.internal.undertow;
+
+import static io.webfolder.cormorant.internal.undertow.UploadHandler.STAGED_OBJECT;
+import static io.webfolder.otmpfile.SecureTempFile.SUPPORT_O_TMPFILE;
+import static java.lang.Long.MAX_VALUE;
+import static java.lang.Long.toHexString;
+import static java.lang.reflect.Proxy.newProxyInstance;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.createTempFile;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Collections.emptyMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.undertow.Undertow;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.webfolder.cormorant.api.fs.SecureTempObject;
+import io.webfolder.cormorant.api.fs.TempObject;
+import io.webfolder.cormorant.api.model.Container;
+import io.webfolder.cormorant.api.service.AccountService;
+import io.webfolder.cormorant.api.service.ContainerService;
+import io.webfolder.cormorant.api.service.ObjectService;
+import io.webfolder.cormorant.internal.jaxrs.TokenAuthorization;
+import io.webfolder.otmpfile.SecureTempFile;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+
+public class TestUploadHandler {
+
+    private static final String CONTENT = "hello, world!";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private Path directory;
+
+    private Undertow server;
+
+    private String url;
+
+    private OkHttpClient client;
+
+    private boolean secure;
+
+    private final AtomicInteger staged = new AtomicInteger();
+
+    private volatile boolean ioThread;
+
+    @Before
+    public void init() throws IOException {
+        directory = createTempDirectory("cormorant-upload");
+        server    = Undertow.builder()
+                            .addHttpListener(0, "localhost")
+                            .setHandler(new UploadHandler<>(new StagedObjectHandler(),
+                                                            new Authorization(),
+                                                            accountService(),
+                                                            containerService(),
+                                                            objectService()))
+                        .build();
+        server.start();
+        final InetSocketAddress address = (InetSocketAddress) server.getListenerInfo().get(0).getAddress();
+        url    = "http://localhost:" + address.getPort() + "/v1/myaccount/mycontainer/myfolder/object.txt";
+        client = new OkHttpClient();
+    }
+
+    @After
+    public void destroy() throws IOException {
+        server.stop();
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void t01SecureTempObject() throws IOException {
+        // the temp directory is on the volume of the container, the body is written to an O_TMPFILE file
+        assumeTrue(SUPPORT_O_TMPFILE);
+        secure = true;
+        assertUpload(RequestBody.create(MediaType.parse("text/plain"), CONTENT.getBytes(UTF_8)));
+        assertUpload(chunked(CONTENT));
+    }
+
+    @Test
+    public void t02AnonymousTempObject() throws IOException {
+        assertUpload(RequestBody.create(MediaType.parse("text/plain"), CONTENT.getBytes(UTF_8)));
+        assertUpload(chunked(CONTENT));
+    }
+
+    @Test
+    public void t03Unauthorized() throws IOException {
+        try (Response response = client.newCall(new Request.Builder()
+                                        .url(url)
+                                        .header("X-Auth-Token", "invalid")
+                                        .put(chunked(CONTENT)).build()).execute()) {
+            // not staged, passed to the next handler
+            assertEquals(400, response.code());
+        }
+        assertEquals(0, staged.get());
+        assertStagingAreaEmpty();
+    }
+
+    protected void assertUpload(final RequestBody body) throws IOException {
+        final int count = staged.get();
+        try (Response response = client.newCall(new Request.Builder()
+                                        .url(url)
+                                        .header("X-Auth-Token", "mytoken")
+                                        .put(body).build()).execute()) {
+            assertEquals(201, response.code());
+            assertEquals(CONTENT, response.body().string());
+        }
+        assertEquals(count + 1, staged.get());
+        // the temp object is created by a worker, not by the IO thread of the connection
+        assertFalse(ioThread);
+        assertStagingAreaEmpty();
+    }
+
+    protected void assertStagingAreaEmpty() throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            assertFalse(stream.findAny().isPresent());
+        }
+    }
+
+    protected RequestBody chunked(final String content) {
+        return new RequestBody() {
+
+            @Override
+            public MediaType contentType() {
+                return MediaType.parse("text/plain");
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                sink.write(content.getBytes(UTF_8));
+            }
+        };
+    }
+
+    protected TempObject<Path> createTempObject() throws IOException {
+        staged.incrementAndGet();
+        if (Thread.currentThread().getName().contains("I/O")) {
+            ioThread = true;
+        }
+        if (secure) {
+            final SecureTempFile secureTempFile = new SecureTempFile();
+            if (secureTempFile.create()) {
+                return new SecureTempObject(secureTempFile, directory);
+            }
+        }
+        return new AnonymousTempObject(directory);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected ObjectService<Path> objectService() {
+        return (ObjectService<Path>) newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ObjectService.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "isValidPath"     : return true;
+                case "createTempObject": return createTempObject();
+                case "deleteTempObject":
+                    deleteIfExists((Path) args[2]);
+                    return null;
+                default                : return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    protected ContainerService<Path> containerService() {
+        return (ContainerService<Path>) newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ContainerService.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "contains"        : return "mycontainer".equals(args[1]);
+                case "getContainer"    : return directory;
+                case "getMaxQuotaBytes":
+                case "getMaxQuotaCount": return MAX_VALUE;
+                default                : return null;
+            }
+        });
+    }
+
+    protected AccountService accountService() {
+        return (AccountService) newProxyInstance(getClass().getClassLoader(), new Class<?>[] { AccountService.class }, (proxy, method, args) -> {
+            return "getContainer".equals(method.getName()) ? new Container((String) args[1], 0L, 0L, 0L, 0L) : null;
+        });
+    }
+
+    private static class Authorization extends TokenAuthorization {
+
+        Authorization() {
+            super(emptyMap(), null, "myaccount");
+        }
+
+        @Override
+        public boolean isAuthorized(String authToken, String permission, String method, String account) {
+            return "mytoken".equals(authToken) && "myaccount".equals(account);
+        }
+    }
+
+    /**
+     * Takes the staged object like the object controller and echoes its content.
+     */
+    private static class StagedObjectHandler implements HttpHandler {
+
+        @Override
+        public void handleRequest(final HttpServerExchange exchange) throws Exception {
+            if (exchange.isInIoThread()) {
+                exchange.dispatch(this);
+                return;
+            }
+            final StagedObject<?> stagedObject = exchange.removeAttachment(STAGED_OBJECT);
+            if (stagedObject == null) {
+                exchange.setStatusCode(400);
+                exchange.endExchange();
+                return;
+            }
+            final Path   object  = (Path) stagedObject.getTempObject().toObject();
+            final byte[] content = readAllBytes(object);
+            Files.delete(object);
+            exchange.setStatusCode(201);
+            exchange.getResponseSender().send(ByteBuffer.wrap(content));
+        }
+    }
+
+    /**
+     * Behaves like {@link SecureTempObject} on every platform, the file can be named only while its channel is open.
+     */
+    private static class AnonymousTempObject implements TempObject<Path> {
+
+        private final Path directory;
+
+        private final Path file;
+
+        private FileChannel channel;
+
+        private Path path;
+
+        AnonymousTempObject(final Path directory) throws IOException {
+            this.directory = directory;
+            this.file      = createTempFile(directory, ".anonymous", null);
+        }
+
+        @Override
+        public WritableByteChannel getWritableByteChannel() throws IOException {
+            channel = FileChannel.open(file, WRITE);
+            return channel;
+        }
+
+        @Override
+        public Path toObject() {
+            if (path == null) {
+                if (channel == null || ! channel.isOpen()) {
+                    throw new IllegalStateException("The descriptor of the temp object is closed.");
+                }
+                try {
+                    path = move(file, directory.resolve(toHexString(RANDOM.nextLong()) + toHexString(RANDOM.nextLong())));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return path;
+        }
+    }
+}
@@ -34,12 +34,15 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.stream.Stream;
 
 import org.javaswift.joss.model.StoredObject;
 import org.jclouds.blobstore.domain.Blob;
@@ -72,9 +75,11 @@ import io.webfolder.cormorant.api.Util;
 import io.webfolder.cormorant.api.exception.CormorantException;
 import io.webfolder.cormorant.api.fs.EmptyResource;
 import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okio.BufferedSink;
 
 @FixMethodOrder(NAME_ASCENDING)
 public class TestCormorant extends TestBase {
@@ -490,6 +495,97 @@ public class TestCormorant extends TestBase {
         assertEquals("hello, world!", content);
     }
 
+    @Test
+    public void t32UploadWithInvalidToken() throws IOException {
+        createUploadContainer();
+        OkHttpClient anonymous = new OkHttpClient();
+        Response response = anonymous.newCall(new Request.Builder().url(getUrl() + contextPath + "/v1/myaccount/uploads/invalid.txt")
+                                    .header("X-Auth-Token", "invalid")
+                                    .put(RequestBody.create(MediaType.parse("text/plain"), "hello, world!".getBytes(UTF_8))).build()).execute();
+        assertEquals(401, response.code());
+        response.close();
+        response = client.newCall(new Request.Builder().url(getUrl() + contextPath + "/v1/myaccount/uploads/invalid.txt").get().build()).execute();
+        assertEquals(404, response.code());
+        response.close();
+        assertStagingAreaEmpty();
+    }
+
+    @Test
+    public void t33ChunkedUpload() throws IOException {
+        createUploadContainer();
+        Response response = client.newCall(new Request.Builder().url(getUrl() + contextPath + "/v1/myaccount/uploads/chunked.txt")
+                                    .put(chunked("hello, chunked world!")).build()).execute();
+        assertEquals(201, response.code());
+        response.close();
+        response = client.newCall(new Request.Builder().url(getUrl() + contextPath + "/v1/myaccount/uploads/chunked.txt").get().build()).execute();
+        assertEquals(200, response.code());
+        assertEquals("hello, chunked world!", response.body().string());
+        response.close();
+        assertStagingAreaEmpty();
+    }
+
+    @Test
+    public void t34UploadOverQuota() throws IOException {
+        client.newCall(new Request.Builder().url(getUrl() + contextPath + "/v1/myaccount/quota")
+                                    .put(RequestBody.create(MediaType.parse("text/plain"), new byte[] { })).build()).execute().close();
+        Response response = client.newCall(new Request.Builder().url(getUrl() + contextPath + "/v1/myaccount/quota")
+                                    .header("X-Container-Meta-Quota-Bytes", "10")
+                                    .post(RequestBody.create(MediaType.parse("text/plain"), new byte[] { })).build()).execute();
+        assertEquals(204, response.code());
+        response.close();
+        response = client.newCall(new Request.Builder().url(getUrl() + contextPath + "/v1/myaccount/quota/large.txt")
+                                    .put(RequestBody.create(MediaType.parse("text/plain"), "hello, world!".getBytes(UTF_8))).build()).execute();
+        assertEquals(413, response.code());
+        response.close();
+        response = client.newCall(new Request.Builder().url(getUrl() + contextPath + "/v1/myaccount/quota/chunked.txt")
+                                    .put(chunked("hello, world!")).build()).execute();
+        assertEquals(413, response.code());
+        response.close();
+        response = client.newCall(new Request.Builder().url(getUrl() + contextPath + "/v1/myaccount/quota/small.txt")
+                                    .put(chunked("hello")).build()).execute();
+        assertEquals(201, response.code());
+        response.close();
+        response = client.newCall(new Request.Builder().url(getUrl() + contextPath + "/v1/myaccount/quota/small2.txt")
+                                    .put(chunked("world!")).build()).execute();
+        assertEquals(413, response.code());
+        response.close();
+        assertFalse(exists(objectStore.resolve("quota").resolve("large.txt")));
+        assertFalse(exists(objectStore.resolve("quota").resolve("chunked.txt")));
+        assertFalse(exists(objectStore.resolve("quota").resolve("small2.txt")));
+    }
+
+    protected void createUploadContainer() throws IOException {
+        client.newCall(new Request.Builder().url(getUrl() + contextPath + "/v1/myaccount/uploads")
+                                    .put(RequestBody.create(MediaType.parse("text/plain"), new byte[] { })).build()).execute().close();
+    }
+
+    /**
+     * @return request body of unknown length, sent with chunked transfer encoding
+     */
+    protected RequestBody chunked(final String content) {
+        return new RequestBody() {
+
+            @Override
+            public MediaType contentType() {
+                return MediaType.parse("text/plain");
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                sink.write(content.getBytes(UTF_8));
+            }
+        };
+    }
+
+    protected void assertStagingAreaEmpty() throws IOException {
+        Path staging = objectStore.resolve("uploads").resolve(".cormorant-tmp");
+        if (isDirectory(staging)) {
+            try (Stream<Path> stream = Files.list(staging)) {
+                assertEquals(0, stream.count());
+            }
+        }
+    }
+
     protected String toString(final InputStream is) {
         final char[] buffer = new char[1024];
         final StringBuilder out = new StringBuilder();
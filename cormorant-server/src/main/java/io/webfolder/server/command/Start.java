@@ -22,6 +22,8 @@
  */
 package io.webfolder.server.command;
 
+import static io.webfolder.cormorant.api.fs.Durability.None;
+import static io.webfolder.cormorant.api.metadata.CacheNames.CONTAINERS;
 import static io.webfolder.cormorant.api.metadata.MetadataStorage.SQLite;
 import static io.webfolder.cormorant.api.model.Role.Admin;
 import static io.webfolder.server.command.LogAppender.Console;
@@ -82,10 +84,12 @@ import io.webfolder.cormorant.api.CormorantApplication;
 import io.webfolder.cormorant.api.CormorantConfiguration;
 import io.webfolder.cormorant.api.CormorantConfiguration.Builder;
 import io.webfolder.cormorant.api.CormorantServer;
+import io.webfolder.cormorant.api.fs.ContainerRegistry;
+import io.webfolder.cormorant.api.fs.Durability;
 import io.webfolder.cormorant.api.fs.PathAccountService;
 import io.webfolder.cormorant.api.fs.PathObjectService;
+import io.webfolder.cormorant.api.metadata.MetadataStorage;
 import io.webfolder.cormorant.api.model.User;
-import io.webfolder.cormorant.api.service.AccountService;
 import io.webfolder.cormorant.api.service.DefaultKeystoneService;
 import io.webfolder.cormorant.api.service.KeystoneService;
 import io.webfolder.server.Server;
@@ -132,6 +136,15 @@ public class Start implements ExitCodes {
     @Option(names = { "--metadata-path" }, arity = "1", paramLabel = "<directory>", description = "Sets metadata path.")
     private Path metadata = get("storage").resolve("metadata");
 
+    @Option(names = { "--metadata-storage" }, paramLabel = "<string>", description = "Sets metadata storage (File, SQLite, SQLiteWAL, Xattr or Log).")
+    private MetadataStorage metadataStorage = SQLite;
+
+    @Option(names = { "--durability" }, paramLabel = "<string>", description = "Sets when writes are forced to disk (None, Sync or GroupCommit).")
+    private Durability durability = None;
+
+    @Option(names = { "--zero-copy-upload" }, description = "Transfers uploads from the socket to the file without copying them to the heap.")
+    private boolean zeroCopyUpload;
+
     @Option(names = { "--pid-file" }, arity = "1", paramLabel = "<file>", description = "Pid file." )
     private Path pidFile = DEFAULT_PID_FILE;
 
@@ -183,12 +196,15 @@ public class Start implements ExitCodes {
                               Admin,
                               true);
 
-        AccountService accountService   = new PathAccountService(data);
+        ContainerRegistry registry = new ContainerRegistry(data);
+        PathAccountService accountService = new PathAccountService(data, metadata.resolve(CONTAINERS), registry);
         KeystoneService keystoneService = new DefaultKeystoneService(singletonMap(admin.getUsername(), admin));
 
         CormorantConfiguration configuration = new Builder()
                                                     .accountName("default")
-                                                    .storage(SQLite)
+                                                    .storage(metadataStorage)
+                                                    .durability(durability)
+                                                    .zeroCopyUpload(zeroCopyUpload)
                                                     .pathMaxCount(10_000)
                                                     .objectStore(data)
                                                     .metadataStore(metadata)
@@ -196,7 +212,8 @@ public class Start implements ExitCodes {
 
         CormorantApplication application = new CormorantApplication(configuration,
                                                     accountService,
-                                                    keystoneService);
+                                                    keystoneService,
+                                                    registry);
 
         CormorantServer server = new CormorantServer();
         server.setPort(port);
@@ -208,7 +225,24 @@ public class Start implements ExitCodes {
 
         server.start();
 
-        Thread thread = new Thread(server::stop);
+        Thread thread = new Thread(() -> {
+            server.stop();
+            try {
+                accountService.close();
+            } catch (IOException e) {
+                log.error("Unable to write container stats.", e);
+            }
+            try {
+                application.close();
+            } catch (IOException e) {
+                log.error("Unable to close the metadata services.", e);
+            }
+            try {
+                registry.close();
+            } catch (IOException e) {
+                log.error("Unable to close the container registry.", e);
+            }
+        });
         thread.setDaemon(true);
 
         getRuntime().addShutdownHook(thread);